@@ -4,6 +4,11 @@
 
 package frc.robot;
 
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.wpilibj.I2C;
 import edu.wpi.first.math.util.Units;
 
@@ -36,6 +41,9 @@ public final class Constants {
     public static final int LENGTH = 512;
     public static final int DRIVER_START_RANGE = 256;
 
+    /** hz, how often changed pixels are pushed to the strip */
+    public static final double RENDER_RATE = 30.0;
+
     //HSV Values
     public static final int YELLOW_H = 40;
     public static final int YELLOW_S = 255;
@@ -44,7 +52,38 @@ public final class Constants {
     public static final int PURPLE_S = 255;
     public static final int PURPLE_V = 70;
   }
+
+  public static class HealthConstants {
+    /** seconds between health checks */
+    public static final double HEALTH_PERIOD = 0.5;
+
+    /** loops over 20 ms per second before it's shown */
+    public static final double MAX_OVERRUN_RATE = 1.0;
+
+    /** volts */
+    public static final double LOW_BATTERY_VOLTAGE = 11.0;
+
+    /** seconds the battery has to stay low, so it doesn't flash when the drivetrain pulls it down */
+    public static final double LOW_BATTERY_TIME = 3.0;
+
+    /** seconds the overlay stays up after a brownout */
+    public static final double BROWNOUT_HOLD_TIME = 5.0;
+  }
   
+  public static class CANConstants {
+    /** milliseconds, status frames nothing reads */
+    public static final int UNUSED_FRAME_PERIOD = 1000;
+
+    /** bus utilization samples averaged at startup, before the status frames are set */
+    public static final int UTILIZATION_SAMPLES = 5;
+
+    /** seconds between startup samples */
+    public static final double UTILIZATION_SAMPLE_PERIOD = 0.02;
+
+    /** health checks averaged for the dashboard bus utilization */
+    public static final int UTILIZATION_AVERAGE = 10;
+  }
+
   public static class GripperConstants {
     public static final I2C.Port I2C_PORT = I2C.Port.kOnboard;
     public static final int ROLLER_MOTOR = 5;
@@ -54,6 +93,23 @@ public final class Constants {
 
     public static final int ROLLER_MOTOR_CURRENT_LIMIT_VALUE = 30;
 
+    /** milliseconds, roller status frame 1 (current) period, current is sampled this often */
+    public static final int ROLLER_STATUS_PERIOD = 5;
+
+    /** current samples in the median filter, 25 ms at 5 ms */
+    public static final int DETECTION_SAMPLES = 5;
+
+    /** seconds after the roller starts that inrush current is ignored */
+    public static final double SPIN_UP_BLANKING = 0.25;
+
+    /** amps, filtered roller current with a game piece in. cone is under the 30 A limit since the filtered current can't reach it */
+    public static final double CONE_STALL_CURRENT = 25;
+    public static final double CUBE_STALL_CURRENT = MAX_CUBE_DRAW;
+
+    /** seconds the current has to stay over the stall current */
+    public static final double CONE_DEBOUNCE = 0.06;
+    public static final double CUBE_DEBOUNCE = 0.04;
+
         /*
     * The minimum value that the IR sensor must read for a game piece to grabbed to be consider grabbed
     */
@@ -99,11 +155,63 @@ public final class Constants {
     /** meters */
     public static final double DISTANCE_TOLERANCE = 0.15;
 
+    /** sample odometry on its own notifier instead of once per robot loop */
+    public static final boolean HIGH_RATE_ODOMETRY = false;
+
+    /** seconds - 200 Hz */
+    public static final double ODOMETRY_PERIOD = 0.005;
+
+    /** milliseconds, leader position frames arrive as often as odometry reads them */
+    public static final int LEADER_POSITION_PERIOD = HIGH_RATE_ODOMETRY ? (int) Math.round(ODOMETRY_PERIOD * 1000) : 20;
+
+    /** seconds - longest physics step the drivetrain simulation takes */
+    public static final double SIM_SUBSTEP = 0.001;
+
+    /** seconds - elapsed time longer than this (e.g. after a pause) is not simulated */
+    public static final double SIM_MAX_DT = 0.1;
+
+    // spark max velocity pid, fit with the characterization routine and fitCharacterization
+    public static final double VELOCITY_P = 0.001;
+    public static final double VELOCITY_D = 0.001;
+    public static final double VELOCITY_FF = 0.15;
+
+    /** milliseconds - velocity and position status frames while characterizing, 100 Hz */
+    public static final int CHARACTERIZATION_FRAME_PERIOD = 10;
+
+    /** samples kept per characterization run, 40 s at 100 Hz */
+    public static final int CHARACTERIZATION_MAX_SAMPLES = 4000;
+
+    /** volts / second */
+    public static final double CHARACTERIZATION_RAMP_RATE = 0.25;
+
+    /** volts */
+    public static final double CHARACTERIZATION_STEP_VOLTAGE = 6.0;
+
+    /** seconds, each run also stops when the command is canceled */
+    public static final double QUASISTATIC_TIMEOUT = 8.0;
+    public static final double DYNAMIC_TIMEOUT = 2.0;
+
     // rotation pid controller
     public static final double ROTATION_P = 8.0;
     public static final double ROTATION_I = 0.0;
     public static final double ROTATION_D = 3.0;
     public static final double ROTATION_TOLERANCE = Math.toRadians(5);
+
+    /** radians, profiled turns settle on the goal so they can finish closer than ROTATION_TOLERANCE */
+    public static final double TURN_TOLERANCE = Math.toRadians(2);
+
+    /** radians / second, turns finish once slower than this */
+    public static final double ROTATION_VELOCITY_TOLERANCE = Math.toRadians(10);
+
+    // profiled turn feedback on top of the profile velocity
+    public static final double TURN_P = 5.0;
+    public static final double TURN_D = 0.0;
+
+    /** volts - turns cruise at the speed this voltage holds, the rest of the battery accelerates */
+    public static final double TURN_CRUISE_VOLTAGE = 8.0;
+
+    /** volts */
+    public static final double NOMINAL_VOLTAGE = 12.0;
   }
 
   public static class LiftConstants {
@@ -130,6 +238,83 @@ public final class Constants {
     public static final double P_VALUE = 0.001;
     public static final double D_VALUE = 0.001;
     public static final double FF_VALUE = 1.2;
+
+    /** velocity reference the bang-bang position control moves at */
+    public static final double BANG_BANG_SPEED = 0.25;
+
+    /**
+     * absolute encoder position with the arm horizontal, arm angles are measured from here.
+     * taken from the presets, TOP_POSITION reaches the high node with the arm a little above
+     * horizontal so this is 0.02 rotations (about 7 degrees) below it. near horizontal, where gravity
+     * pulls hardest, a few degrees off changes the feedforward by under 1% and ARM_P takes up the
+     * rest. to check it, hold the arm level and read "Through-bore encoder position"
+     */
+    public static final double HORIZONTAL_POSITION = 0.32;
+
+    /** radians per second and radians per second squared, profiled position control limits */
+    public static final double ARM_MAX_VELOCITY = 4.0;
+    public static final double ARM_MAX_ACCELERATION = 8.0;
+
+    /** volts per radian of profile error */
+    public static final double ARM_P = 12.0;
+    public static final double ARM_D = 0.5;
+
+    /** arm feedforward, estimated from the gearing and arm below until it's characterized */
+    public static final double ARM_KS = 0.1;
+    public static final double ARM_KG = 0.45;
+    public static final double ARM_KV = 2.0;
+    public static final double ARM_KA = 0.02;
+
+    /** radians per second, how slow the arm has to be to be at the goal */
+    public static final double ARM_VELOCITY_TOLERANCE = 0.2;
+
+    /** volts */
+    public static final double ARM_MAX_VOLTAGE = 10.0;
+
+    /** motor turns per arm turn */
+    public static final double ARM_GEARING = 100.0;
+
+    /** meters */
+    public static final double ARM_LENGTH = 0.8;
+
+    /** kilograms */
+    public static final double ARM_MASS = 5.0;
+
+    /** spark closed loop slot with the smart motion gains, the velocity loop is slot 0 */
+    public static final int SMART_MOTION_SLOT = 1;
+
+    /** smart motion velocity loop, duty cycle per rpm. feedforward is one over the NEO free speed */
+    public static final double SMART_MOTION_P = 0.0001;
+    public static final double SMART_MOTION_FF = 1.0 / 5676;
+
+    /** motor rpm and rpm per second, the same limits as the RIO profile. the lift encoders are in motor rotations */
+    public static final double SMART_MOTION_MAX_VELOCITY = ARM_MAX_VELOCITY / (2 * Math.PI) * 60 * ARM_GEARING;
+    public static final double SMART_MOTION_MAX_ACCELERATION = ARM_MAX_ACCELERATION / (2 * Math.PI) * 60 * ARM_GEARING;
+
+    /** volts per arm rotation one side is ahead of the other, half goes to each side */
+    public static final double SYNC_P = 40.0;
+
+    /**
+     * arm rotations between the sides that stops the lift. 0.02 is 7.2 degrees. stays here until the
+     * side error is measured on the robot, SIM_ARM_STIFFNESS is an estimate and a threshold tuned on
+     * it could stop the lift mid match. a skipped chain tooth on a 60 tooth arm sprocket is 0.017
+     */
+    public static final double SYNC_FAULT_THRESHOLD = 0.02;
+
+    /** arm rotations, a sync fault clears itself once the sides come back this close */
+    public static final double SYNC_CLEAR_THRESHOLD = 0.005;
+
+    /** absolute encoder position from each end of travel where the simulated limit switches close */
+    public static final double SIM_LIMIT_SWITCH_RANGE = 0.005;
+
+    /** seconds - elapsed time longer than this (e.g. after a pause) is not simulated */
+    public static final double ARM_SIM_MAX_DT = 0.1;
+
+    /**
+     * newton meters per radian the simulated arm twists between its sides. an estimate for the
+     * crossbar and both chain runs, measure it by holding one side and loading the other
+     */
+    public static final double SIM_ARM_STIFFNESS = 500.0;
   }
 
   /*
@@ -142,6 +327,96 @@ public final class Constants {
     public static final double MAX_VERT_OFFSET_FOR_LOW = 30.0;
     public static final double MAX_VERT_OFFSET_FOR_MED = 60.0;
     public static final double MAX_VERT_OFFSET_FOR_HIGH = 90.0;
+
+    /** meters, 2023 field */
+    public static final double FIELD_LENGTH = 16.54;
+    public static final double FIELD_WIDTH = 8.02;
+
+    /** number of odometry poses kept for latency compensation, ~1.3 s at 200 Hz */
+    public static final int POSE_HISTORY_SIZE = 256;
+
+    /** fraction of the vision error applied per measurement */
+    public static final double VISION_TRANSLATION_GAIN = 0.1;
+    public static final double VISION_ROTATION_GAIN = 0.02;
+
+    /** meters, vision poses further than this from the estimate are rejected */
+    public static final double VISION_MAX_ERROR = 1.0;
+
+    /** frames in a row that have to agree before vision first places the robot on the field */
+    public static final int VISION_SEED_FRAMES = 3;
+
+    /**
+     * frames in a row, all rejected for VISION_MAX_ERROR and agreeing with each other, before the
+     * estimate jumps to them. about a third of a second at 30 fps
+     */
+    public static final int VISION_RESEED_FRAMES = 10;
+
+    /** how close frames have to be to agree, once odometry between them is taken out */
+    public static final double VISION_SEED_TOLERANCE = 0.25; // meters
+    public static final double VISION_SEED_ANGLE_TOLERANCE = Units.degreesToRadians(5);
+
+    /** networktables name of the limelight */
+    public static final String LIMELIGHT_NAME = "limelight";
+
+    /** seconds, frames from different cameras captured this close together are fused */
+    public static final double FUSION_WINDOW = 0.02;
+
+    /** meters, closer tags don't get any more weight when fusing */
+    public static final double FUSION_MIN_DISTANCE = 0.5;
+
+    /**
+     * limelight position on the robot, odometry frame. faces the gripper, which is odometry -x.
+     * the camera's own pose on its web page is left at zero, this is applied in code instead
+     */
+    public static final Transform3d ROBOT_TO_CAMERA = new Transform3d(
+      new Translation3d(-0.30, 0.0, 0.50),
+      new Rotation3d(0.0, 0.0, Math.PI)
+    );
+
+    /** degrees, limelight 2+ */
+    public static final double HORIZONTAL_FOV = 59.6;
+    public static final double VERTICAL_FOV = 49.7;
+
+    /** meters, 2023 AprilTags */
+    public static final double TAG_SIZE = Units.inchesToMeters(6.0);
+
+    /** crop window half size as a multiple of the target's size in the image */
+    public static final double CROP_MARGIN = 2.5;
+
+    /** smallest crop window half size, -1 to 1 image coordinates */
+    public static final double CROP_MIN_SIZE = 0.15;
+
+    /** weight of each new frame in the latency and frame rate averages */
+    public static final double METRIC_SMOOTHING = 0.05;
+
+    // simulated limelight
+    /** seconds between frames when processing keeps up, the sensor runs at 90 fps */
+    public static final double SIM_MIN_FRAME_PERIOD = 0.011;
+
+    /** seconds, reported as tl and cl. full frame AprilTag processing limits the camera to ~30 fps */
+    public static final double SIM_PIPELINE_LATENCY = 0.033;
+    public static final double SIM_CAPTURE_LATENCY = 0.011;
+
+    /** standard deviation of tx and ty - degrees */
+    public static final double SIM_ANGLE_NOISE = 0.1;
+
+    /** standard deviation of bot pose translation per meter to the tag - meters */
+    public static final double SIM_POSE_NOISE = 0.02;
+
+    /** standard deviation of bot pose yaw - degrees */
+    public static final double SIM_YAW_NOISE = 1.0;
+
+    /** chance a frame misses every tag */
+    public static final double SIM_DROPOUT = 0.05;
+
+    /** meters, tags further away aren't detected */
+    public static final double SIM_MAX_DISTANCE = 6.0;
+
+    /** part of the pipeline latency that doesn't shrink with the crop window */
+    public static final double SIM_FIXED_LATENCY = 0.3;
+
+    /** seconds from asking for a pipeline to frames from it */
+    public static final double SIM_PIPELINE_SWITCH_TIME = 0.1;
   }
   
   public static class AutoConstants
@@ -149,5 +424,34 @@ public final class Constants {
     public static final double FAST_SPEED = 0.5;
     public static final double SLOW_SPEED = 0.25;
 
+    /** meters / second */
+    public static final double TRAJECTORY_MAX_VELOCITY = 1.5;
+
+    /** meters / second^2 */
+    public static final double TRAJECTORY_MAX_ACCELERATION = 1.5;
+
+    // ramsete controller, defaults from wpilib
+    public static final double RAMSETE_B = 2.0;
+    public static final double RAMSETE_ZETA = 0.7;
+
+    /**
+     * meters from the alliance wall to the robot center with the bumpers on the grid. the grid's
+     * front edge is 1.38 m out and the robot is about 0.92 m long with bumpers
+     */
+    public static final double GRID_START_DISTANCE = 1.84;
+
+    /** meters, grid columns counted from the y = 0 side, 2 and 8 are the outer cube nodes */
+    public static final double COLUMN_2_Y = 1.07;
+    public static final double COLUMN_5_Y = 2.75;
+    public static final double COLUMN_8_Y = 4.42;
+
+    // where each auto starts, blue origin with the gripper facing the grid. check on the field
+    public static final Pose2d BLUE_2_START = new Pose2d(GRID_START_DISTANCE, COLUMN_2_Y, new Rotation2d());
+    public static final Pose2d BLUE_5_START = new Pose2d(GRID_START_DISTANCE, COLUMN_5_Y, new Rotation2d());
+    public static final Pose2d BLUE_8_START = new Pose2d(GRID_START_DISTANCE, COLUMN_8_Y, new Rotation2d());
+    public static final Pose2d RED_2_START = new Pose2d(LimelightConstants.FIELD_LENGTH - GRID_START_DISTANCE, COLUMN_2_Y, Rotation2d.fromDegrees(180));
+    public static final Pose2d RED_5_START = new Pose2d(LimelightConstants.FIELD_LENGTH - GRID_START_DISTANCE, COLUMN_5_Y, Rotation2d.fromDegrees(180));
+    public static final Pose2d RED_8_START = new Pose2d(LimelightConstants.FIELD_LENGTH - GRID_START_DISTANCE, COLUMN_8_Y, Rotation2d.fromDegrees(180));
+
   }
 }
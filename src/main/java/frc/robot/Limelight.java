@@ -1,21 +1,36 @@
 package frc.robot;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoubleSubscriber;
 import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableEvent;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringSubscriber;
 import edu.wpi.first.util.sendable.Sendable;
 import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.util.sendable.SendableRegistry;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.WaitCommand;
 
 import frc.robot.subsystems.Testable;
+import frc.robot.util.LimelightResults;
 import static frc.robot.Constants.LimelightConstants.*;
 
 
@@ -24,29 +39,439 @@ public class Limelight implements Testable, Sendable {
     /**
      * Provides an object through which to access the networkTables entries associated with the limelight
      */
-    private final NetworkTable table = NetworkTableInstance.getDefault().getTable("limelight");
+    private final NetworkTable table;
+
+    /** networktables name of the camera */
+    private final String name;
+
+    /**
+     * where the camera is on the robot. the limelights are set up with the camera at the robot origin,
+     * so botpose is the camera's own field pose and this moves it to the robot
+     */
+    private final Transform3d cameraToRobot;
+
+    /**
+     * Everything the limelight reported about one camera frame. Built once per frame from the json
+     * results on the networktables listener thread and never modified, so values are never mixed between frames
+     */
+    public static final class TargetSnapshot {
+        /** snapshot before the first frame arrives */
+        public static final TargetSnapshot EMPTY = new TargetSnapshot(
+            false, Double.NaN, Double.NaN, Double.NaN, false, 0, 0, 0, Double.NaN
+        );
+
+        /** whether the limelight sees a target */
+        public final boolean hasTargets;
+
+        /** degrees to the largest target, NaN without a target */
+        public final double horizontalOffset;
+        public final double verticalOffset;
+
+        /** percent of the image, NaN without a target */
+        public final double targetArea;
+
+        /** whether the bot pose fields are valid */
+        public final boolean hasBotPose;
+
+        /** blue alliance field coordinates - meters */
+        public final double botPoseX;
+        public final double botPoseY;
+
+        /** radians */
+        public final double botPoseYaw;
+
+        /** FPGA time the image was captured - seconds */
+        public final double captureTime;
+
+        public TargetSnapshot(
+            boolean hasTargets, double horizontalOffset, double verticalOffset, double targetArea,
+            boolean hasBotPose, double botPoseX, double botPoseY, double botPoseYaw, double captureTime
+        ) {
+            this.hasTargets = hasTargets;
+            this.horizontalOffset = horizontalOffset;
+            this.verticalOffset = verticalOffset;
+            this.targetArea = targetArea;
+            this.hasBotPose = hasBotPose;
+            this.botPoseX = botPoseX;
+            this.botPoseY = botPoseY;
+            this.botPoseYaw = botPoseYaw;
+            this.captureTime = captureTime;
+        }
+    }
+
+    /**
+     * Robot pose from one camera frame, with what's needed to weigh it against other cameras.
+     * Built on the networktables listener thread and never modified
+     */
+    public static final class PoseMeasurement {
+        /** blue alliance field coordinates - meters, NaN without a pose */
+        public final double x;
+        public final double y;
+
+        /** radians */
+        public final double yaw;
+
+        /** FPGA time the image was captured - seconds */
+        public final double captureTime;
+
+        /** tags the pose was computed from, 0 if the frame has no pose */
+        public final int tagCount;
+
+        /** average distance to those tags - meters */
+        public final double tagDistance;
+
+        public PoseMeasurement(double x, double y, double yaw, double captureTime, int tagCount, double tagDistance) {
+            this.x = x;
+            this.y = y;
+            this.yaw = yaw;
+            this.captureTime = captureTime;
+            this.tagCount = tagCount;
+            this.tagDistance = tagDistance;
+        }
+
+        /** whether the frame had a pose */
+        public boolean hasPose() {
+            return tagCount > 0;
+        }
+    }
+
+    /** pipeline the camera reports running, each json frame also carries the one it came from */
+    private final DoubleSubscriber activePipelineSubscriber;
+
+    /** full results for every frame, parsed on the listener thread. everything about a frame comes from here */
+    private final StringSubscriber jsonSubscriber;
+
+    // written by us, looked up once
+    private final NetworkTableEntry pipelineEntry;
+    private final NetworkTableEntry ledModeEntry;
+    private final DoubleArrayPublisher cropPublisher;
+
+    /** given every json frame from the current pipeline, null if nobody is listening */
+    private volatile Consumer<PoseMeasurement> measurementListener;
+
+    /** pipeline last asked for, frames from any other pipeline are stale. -1 until one is set */
+    private volatile int requestedPipeline = -1;
+
+    /** whether to crop around the target, only worth it while following a single target */
+    private volatile boolean cropEnabled = false;
+
+    /** crop window as x min, x max, y min, y max, -1 to 1 in the same directions as tx and ty. listener thread only */
+    private final double[] crop = { -1, 1, -1, 1 };
+    private volatile boolean cropped = false;
+
+    /** time the last frame arrived - microseconds. listener thread only */
+    private long lastArrival = 0;
+
+    // averaged separately so cropping can be compared against full frame
+    /** milliseconds, reported pipeline latency */
+    private volatile double fullFrameLatency = Double.NaN;
+    private volatile double croppedLatency = Double.NaN;
+
+    /** frames per second */
+    private volatile double fullFrameRate = Double.NaN;
+    private volatile double croppedFrameRate = Double.NaN;
+
+    /** frames dropped because they came from the previous pipeline */
+    private volatile long staleFrames = 0;
+
+    /** latest frame, replaced whole by the listener */
+    private volatile TargetSnapshot snapshot = TargetSnapshot.EMPTY;
+
+    // Full results from the json dump. Three buffers are passed between the listener, which parses
+    // into its own, and the main loop, which reads its own, so neither waits or allocates
+
+    /** most recently parsed frame not owned by the listener or the main loop */
+    private final AtomicReference<LimelightResults> readyResults = new AtomicReference<>(new LimelightResults());
+
+    /** listener thread only */
+    private LimelightResults parsingResults = new LimelightResults();
+    private long frames = 0;
+
+    /** main loop only */
+    private LimelightResults currentResults = new LimelightResults();
+
+    /** microseconds the last json parse took */
+    private volatile double parseTime = 0;
+
+    /**
+     * @param name networktables table the camera publishes to, set on the limelight's web page
+     * @param robotToCamera camera position on the robot, odometry frame
+     */
+    public Limelight(String name, Transform3d robotToCamera) {
+        this.name = name;
+        this.cameraToRobot = robotToCamera.inverse();
+
+        table = NetworkTableInstance.getDefault().getTable(name);
+
+        activePipelineSubscriber = table.getDoubleTopic("getpipe").subscribe(-1);
+        jsonSubscriber = table.getStringTopic("json").subscribe("");
+
+        pipelineEntry = table.getEntry("pipeline");
+        ledModeEntry = table.getEntry("ledMode");
+        cropPublisher = table.getDoubleArrayTopic("crop").publish();
+
+        SendableRegistry.add(this, name);
+
+        // the json dump carries the frame timestamp so it changes every frame, and it has everything
+        // the separate entries do, so one parse gives a consistent frame
+        NetworkTableInstance.getDefault().addListener(
+            jsonSubscriber,
+            EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+            event -> updateResults(event.valueData.value.getString(), event.valueData.value.getTime())
+        );
+    }
+
+    /**
+     * @return networktables name of the camera
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Receive a pose measurement for every frame, including frames without a pose. Called on the
+     * networktables listener thread, which every camera shares
+     * @param listener replaces any previous listener
+     */
+    public void setMeasurementListener(Consumer<PoseMeasurement> listener) {
+        measurementListener = listener;
+    }
+
+    /**
+     * robot pose from a botpose array
+     * @param botPose camera field pose: x, y, z (meters), roll, pitch, yaw (degrees)
+     */
+    private Pose2d toRobotPose(double[] botPose) {
+        Pose3d camera = new Pose3d(
+            new Translation3d(botPose[0], botPose[1], botPose[2]),
+            new Rotation3d(Math.toRadians(botPose[3]), Math.toRadians(botPose[4]), Math.toRadians(botPose[5]))
+        );
+
+        return camera.transformBy(cameraToRobot).toPose2d();
+    }
+
+    /**
+     * time a frame was captured, listener thread only
+     * @param arrival time the json arrived - microseconds
+     * @return FPGA time - seconds
+     */
+    private static double captureTime(LimelightResults results, long arrival) {
+        // arrival minus how long it took to produce
+        return arrival / 1e6 - (results.pipelineLatency + results.captureLatency) / 1000.0;
+    }
+
+    /**
+     * target and bot pose from one frame of json results, listener thread only
+     * @param arrival time the json arrived - microseconds
+     */
+    private TargetSnapshot createSnapshot(LimelightResults results, long arrival) {
+        // v can be set by targets the parser doesn't keep, like detector results
+        boolean hasTargets = results.hasTargets && !Double.isNaN(results.targetHorizontalOffset);
+        boolean hasBotPose = hasTargets && results.hasBotPose;
+        Pose2d robotPose = hasBotPose ? toRobotPose(results.botPose) : null;
+
+        return new TargetSnapshot(
+            hasTargets,
+            hasTargets ? results.targetHorizontalOffset : Double.NaN,
+            hasTargets ? results.targetVerticalOffset : Double.NaN,
+            hasTargets ? results.targetArea : Double.NaN,
+            hasBotPose,
+            hasBotPose ? robotPose.getX() : 0,
+            hasBotPose ? robotPose.getY() : 0,
+            hasBotPose ? robotPose.getRotation().getRadians() : 0,
+            captureTime(results, arrival)
+        );
+    }
+
+    /**
+     * adds a frame to the latency and frame rate averages, listener thread only
+     * @param arrival time the frame arrived - microseconds
+     * @param latency pipeline latency - milliseconds
+     */
+    private void recordMetrics(long arrival, double latency) {
+        // the crop sent after the previous frame is what this frame was processed with
+        double rate = (lastArrival > 0 && arrival > lastArrival) ? 1e6 / (arrival - lastArrival) : Double.NaN;
+        lastArrival = arrival;
+
+        if (cropped) {
+            croppedLatency = smooth(croppedLatency, latency);
+            croppedFrameRate = smooth(croppedFrameRate, rate);
+        } else {
+            fullFrameLatency = smooth(fullFrameLatency, latency);
+            fullFrameRate = smooth(fullFrameRate, rate);
+        }
+    }
+
+    private static double smooth(double average, double value) {
+        if (Double.isNaN(value)) {
+            return average;
+        }
+        return Double.isNaN(average) ? value : average + (value - average) * METRIC_SMOOTHING;
+    }
+
+    /**
+     * crops the image around a target so the pipeline searches less of it, listener thread only
+     * @param target frame with a target to crop around, null for the full frame
+     */
+    private void setCrop(TargetSnapshot target) {
+        if (target == null) {
+            if (!cropped) {
+                return;
+            }
+
+            crop[0] = -1;
+            crop[1] = 1;
+            crop[2] = -1;
+            crop[3] = 1;
+            cropped = false;
+        } else {
+            // target center in -1 to 1 image coordinates
+            double x = Math.tan(Math.toRadians(target.horizontalOffset)) / Math.tan(Math.toRadians(HORIZONTAL_FOV / 2));
+            double y = Math.tan(Math.toRadians(target.verticalOffset)) / Math.tan(Math.toRadians(VERTICAL_FOV / 2));
+
+            // area is a percent of the image, its square root is roughly the target's share of each side
+            double size = Math.max(CROP_MIN_SIZE, CROP_MARGIN * Math.sqrt(target.targetArea / 100));
+
+            crop[0] = MathUtil.clamp(x - size, -1, 1);
+            crop[1] = MathUtil.clamp(x + size, -1, 1);
+            crop[2] = MathUtil.clamp(y - size, -1, 1);
+            crop[3] = MathUtil.clamp(y + size, -1, 1);
+            cropped = true;
+        }
+
+        cropPublisher.set(crop);
+    }
+
+    /**
+     * Crop the image around the target while it stays in view, it goes back to full frame as soon as the target is lost.
+     * Lowers pipeline latency, but tags outside the window aren't seen
+     * @param enabled whether to crop
+     */
+    public void setCropEnabled(boolean enabled) {
+        cropEnabled = enabled;
+    }
+
+    /**
+     * Gets the pipeline the camera is actually running
+     * @return index reported by the limelight, -1 before the first frame
+     */
+    public int getActivePipeline() {
+        return (int) activePipelineSubscriber.get();
+    }
+
+    /**
+     * Average pipeline latency, full frame or cropped
+     * @param cropped which frames to average
+     * @return milliseconds, NaN if there haven't been any
+     */
+    public double getAverageLatency(boolean cropped) {
+        return cropped ? croppedLatency : fullFrameLatency;
+    }
+
+    /**
+     * Average frame rate, full frame or cropped
+     * @param cropped which frames to average
+     * @return frames per second, NaN if there haven't been any
+     */
+    public double getAverageFrameRate(boolean cropped) {
+        return cropped ? croppedFrameRate : fullFrameRate;
+    }
+
+    /**
+     * Whether frames from the last requested pipeline are arriving
+     * @return false for a little while after {@link #setPipeline(int)}
+     */
+    public boolean isPipelineReady() {
+        return requestedPipeline < 0 || getActivePipeline() == requestedPipeline;
+    }
+
+    /**
+     * Gets the most recent camera frame, safe to read from any thread
+     * @return every value from one frame
+     */
+    public TargetSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * parses the json dump and publishes the frame, runs on the networktables listener thread
+     * @param json results for one frame
+     * @param arrival time the json arrived - microseconds
+     */
+    private void updateResults(String json, long arrival) {
+        long start = System.nanoTime();
+        boolean parsed = parsingResults.parse(json);
+        parseTime = (System.nanoTime() - start) / 1000.0;
+
+        if (!parsed) {
+            return;
+        }
+
+        // the camera keeps sending the old pipeline's frames for a little while after a switch
+        int requested = requestedPipeline;
+        if (requested >= 0 && parsingResults.pipeline != requested) {
+            staleFrames++;
+            lastArrival = 0;
+            setCrop(null);
+            return;
+        }
+
+        TargetSnapshot frame = createSnapshot(parsingResults, arrival);
+        snapshot = frame;
+
+        recordMetrics(arrival, parsingResults.pipelineLatency);
+        setCrop(cropEnabled && frame.hasTargets ? frame : null);
+
+        Consumer<PoseMeasurement> listener = measurementListener;
+        if (listener != null) {
+            listener.accept(createMeasurement(parsingResults, arrival));
+        }
+
+        parsingResults.setSequence(++frames);
+        parsingResults = readyResults.getAndSet(parsingResults);
+    }
 
     /**
-     * Creates a default array of values for use with the botPose table entry
+     * robot pose from one frame of json results, listener thread only
+     * @param arrival time the json arrived - microseconds
      */
-    private Number[] defaultValues =
-    {
-        0.0f,
-        0.0f,
-        0.0f,
-        0.0f,
-        0.0f,
-        0.0f
-    };
+    private PoseMeasurement createMeasurement(LimelightResults results, long arrival) {
+        double captureTime = captureTime(results, arrival);
+
+        int tags = results.getFiducialCount();
+        if (!results.hasBotPose || tags == 0) {
+            return new PoseMeasurement(Double.NaN, Double.NaN, Double.NaN, captureTime, 0, Double.NaN);
+        }
+
+        // distance from the robot origin, the camera offset is small next to the distance to the tags
+        double distance = 0;
+        for (int i = 0; i < tags; i++) {
+            double[] tag = results.fiducials[i].targetPoseRobot;
+            distance += Math.sqrt(tag[0] * tag[0] + tag[1] * tag[1] + tag[2] * tag[2]);
+        }
+
+        Pose2d robotPose = toRobotPose(results.botPose);
+        return new PoseMeasurement(
+            robotPose.getX(),
+            robotPose.getY(),
+            robotPose.getRotation().getRadians(),
+            captureTime,
+            tags,
+            distance / tags
+        );
+    }
 
     /**
-     * Creates a number Array to store the robot position values from the botPose entry
-     * Fills it with the numbers from the defaultValues array
+     * Gets the latest parsed json results. Main loop only, the returned object is reused
+     * once this is called again
+     * @return every visible AprilTag with its pose and corners, from one frame
      */
-    private Number[] getRobotPosition3D()
-    {
-        Number[] robotPositionValues = table.getEntry("botPose").getNumberArray(defaultValues);
-        return robotPositionValues;
+    public LimelightResults getResults() {
+        if (readyResults.get().getSequence() > currentResults.getSequence()) {
+            currentResults = readyResults.getAndSet(currentResults);
+        }
+
+        return currentResults;
     }
 
 
@@ -55,7 +480,7 @@ public class Limelight implements Testable, Sendable {
       * @return Outputs either 0 or 1: 0 is for RR tape and 1 is for Apriltags
       */
     public int getPipeline() {
-        return table.getEntry("pipeline").getNumber(0).intValue();
+        return pipelineEntry.getNumber(0).intValue();
     }
 
     /**
@@ -75,26 +500,27 @@ public class Limelight implements Testable, Sendable {
      * @param mode 0 for pipeline default, 1 for off, 2 for blink, 3 for on
      */
     public void setLedMode(int mode) {
-        table.getEntry("ledMode").setInteger(mode);
+        ledModeEntry.setInteger(mode);
     }
 
     /**
      * Allows us to set the vision pipeline to a number of our choosing
      */
     public void setPipeline(int desiredPipeline) {
-        table.getEntry("pipeline").setNumber(desiredPipeline);
+        requestedPipeline = desiredPipeline;
+
+        // the old pipeline's target isn't valid for the new one
+        snapshot = TargetSnapshot.EMPTY;
+
+        pipelineEntry.setNumber(desiredPipeline);
     }
 
     /**
      * Gets the horizontal offset angle from networkTable
      * @return The horizontal offset angle from the limelight crosshair to the target
      */
-    public Double getHorizontalOffset() {
-        if(hasTargets()){
-        return table.getEntry("tx").getNumber(0).doubleValue();
-        }
-
-        return Double.NaN;
+    public double getHorizontalOffset() {
+        return snapshot.horizontalOffset;
     }
 
    
@@ -103,43 +529,19 @@ public class Limelight implements Testable, Sendable {
      * Gets the vertical offset angle from the limelight to the target
      * @return The vertical angle from the limelight crosshair to the target
      */
-    public Double getVerticalOffset() {
-
-        if(hasTargets()){
-
-            return table.getEntry("tx").getNumber(0).doubleValue();
-
-        }
-        
-            return Double.NaN;
+    public double getVerticalOffset() {
+        return snapshot.verticalOffset;
     }
 
    
 
-     /**
-      * Outputs between -90 and 0 degrees
-      * @return The skew of the target that is currently within the limelight's viewframe
-      */
-    public Double getSkew() {
-        if(hasTargets()){
-            return table.getEntry("ts0").getNumber(0).doubleValue();
-        }
-
-            return Double.NaN;
-    }
-
-   
      /**
       * Returns the total area that the current target takes up on the limelight's screen
       * Outputs a value associated with the percent of the screen being taken up
       * @return The area of the limelight screen being taken up
       */
-    public Double getTargetArea() {
-        if(hasTargets()){
-        return table.getEntry("ta").getNumber(0).doubleValue();
-        }
-
-        return Double.NaN;
+    public double getTargetArea() {
+        return snapshot.targetArea;
     }
 
 
@@ -164,11 +566,11 @@ public class Limelight implements Testable, Sendable {
     }
 
     public double getRobotXPosition(){
-        return(getRobotPosition3D()[0].doubleValue());
+        return snapshot.botPoseX;
     }
 
     public double getRobotYPosition(){
-        return(getRobotPosition3D()[1].doubleValue());
+        return snapshot.botPoseY;
     }
 
     /**
@@ -210,22 +612,27 @@ public class Limelight implements Testable, Sendable {
       * @return If the limelight has any targets
       */
     public boolean hasTargets() {
-        return (table.getEntry("tv").getDouble(0) > 0);
+        return snapshot.hasTargets;
     }
 
 
      /**
-      *checks if the limelight is in Apriltag, and if it has a target,  returns the ID of the Apriltag. Otherwise, it returns null.
-      * @return The ID of the currently targeted Apriltag
+      * Gets the ID of the largest AprilTag the limelight sees, from the json results
+      * @return The ID of the currently targeted Apriltag, or -1 if none is visible
       */
-    public Double getTargetID() {
-        if(getPipeline() == 1) {
-            if(hasTargets()) {
+    public int getTargetID() {
+        LimelightResults results = getResults();
+
+        int id = -1;
+        double largest = 0;
+        for (int i = 0; i < results.getFiducialCount(); i++) {
+            if (results.fiducials[i].area > largest || id == -1) {
+                largest = results.fiducials[i].area;
+                id = results.fiducials[i].id;
             }
-         }
-
-        return null;
+        }
 
+        return id;
     }
     
      /**
@@ -319,5 +726,15 @@ public class Limelight implements Testable, Sendable {
         builder.addDoubleProperty("Robot X Position", this::getRobotXPosition, null);
         builder.addDoubleProperty("Robot Y Position", this::getRobotYPosition, null);
         builder.addIntegerProperty("Current Pipeline", this::getPipeline, null);
+        builder.addIntegerProperty("Target ID", this::getTargetID, null);
+        builder.addIntegerProperty("Visible Tags", () -> getResults().getReportedFiducialCount(), null);
+        builder.addDoubleProperty("JSON Parse Time (us)", () -> parseTime, null);
+        builder.addIntegerProperty("Active Pipeline", this::getActivePipeline, null);
+        builder.addIntegerProperty("Stale Frames", () -> staleFrames, null);
+        builder.addBooleanProperty("Cropped", () -> cropped, null);
+        builder.addDoubleProperty("Full Frame Latency (ms)", () -> fullFrameLatency, null);
+        builder.addDoubleProperty("Cropped Latency (ms)", () -> croppedLatency, null);
+        builder.addDoubleProperty("Full Frame FPS", () -> fullFrameRate, null);
+        builder.addDoubleProperty("Cropped FPS", () -> croppedFrameRate, null);
     }
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import edu.wpi.first.wpilibj.livewindow.LiveWindow;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.util.LoopProfiler;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -27,6 +28,8 @@ public class Robot extends TimedRobot {
 
   private RobotContainer robotContainer;
 
+  private final LoopProfiler profiler = LoopProfiler.getInstance();
+
   /**
    * This function is run when the robot is first started up and should be used for any
    * initialization code.
@@ -64,6 +67,17 @@ public class Robot extends TimedRobot {
     LiveWindow.setEnabled(false);
   }
 
+  /**
+   * Wraps the whole robot loop so the profiler can time everything outside robotPeriodic, which is
+   * mostly the SmartDashboard, LiveWindow and Shuffleboard Sendable updates.
+   */
+  @Override
+  protected void loopFunc() {
+    profiler.beginLoop();
+    super.loopFunc();
+    profiler.endLoop();
+  }
+
   /**
    * This function is called every 20 ms, no matter the mode. Use this for items like diagnostics
    * that you want ran during disabled, autonomous, teleoperated and test.
@@ -77,7 +91,9 @@ public class Robot extends TimedRobot {
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
+    profiler.beginScheduler();
     CommandScheduler.getInstance().run();
+    profiler.endScheduler();
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
@@ -4,13 +4,28 @@
 
 package frc.robot;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import frc.robot.Constants.LiftConstants;
+import frc.robot.Constants.LimelightConstants;
 import frc.robot.Constants.OperatorConstants;
 import frc.robot.commands.*;
 import frc.robot.commands.auto.LiftThenLeave;
+import frc.robot.commands.drive.AlignToTarget;
+import frc.robot.commands.drive.CharacterizeDrive;
+import frc.robot.commands.drive.CharacterizeDrive.Test;
 import frc.robot.commands.drive.DriveDistance;
+import frc.robot.sim.SimulatedLimelight;
 import frc.robot.subsystems.*;
 import frc.robot.subsystems.AddressableLEDSubsystem.ColorType;
+import frc.robot.trajectory.TrajectoryLibrary;
+import frc.robot.util.RobotHealth;
+import frc.robot.util.StatusFrames;
+import frc.robot.util.VisionFusion;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.util.sendable.Sendable;
@@ -18,6 +33,7 @@ import frc.robot.subsystems.AddressableLEDSubsystem.ColorType;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.util.sendable.Sendable;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
@@ -55,6 +71,15 @@ public class RobotContainer {
 
   private final Limelight limelight;
 
+  /** shows problems on the driver LEDs */
+  private final RobotHealth health;
+
+  /** robot pose from every limelight */
+  private final VisionFusion vision;
+
+  /** publishes limelight values from the drivetrain sim, null on the robot */
+  private final SimulatedLimelight simulatedLimelight;
+
   private final GripperSystem gripperSystem;
   
   private final LiftThenLeave liftThenLeave;
@@ -73,9 +98,13 @@ public class RobotContainer {
   private final Joystick driverRight;
   private final JoystickButton balanceLeftBtn;
   private final JoystickButton balanceRightBtn;
+  private final JoystickButton alignBtn;
 
   private SendableChooser<Command> autoChooser;
 
+  /** every autonomous routine by name */
+  private final Map<String, Command> autos = new LinkedHashMap<>();
+
   private final InstantCommand togglePipeline;
 
   // hardware connection check stuff
@@ -92,6 +121,9 @@ public class RobotContainer {
     balanceLeftBtn = new JoystickButton(driverLeft, 3);
     balanceRightBtn = new JoystickButton(driverRight, 3);
 
+    // turn onto the limelight target
+    alignBtn = new JoystickButton(driverRight, 2);
+
     // intake + outtake
     rightBumper = new JoystickButton(operator, OperatorConstants.OP_BUTTON_CONE_INTAKE);
     rightTrigger = new Trigger(() -> { return (operator.getRightTriggerAxis() >= 0.8); });
@@ -109,29 +141,47 @@ public class RobotContainer {
     liftMidR = new POVButton(operator, 270);
     liftDown = new POVButton(operator, 180);
 
+    /** Limelight instantiations */
+    limelight = new Limelight(LimelightConstants.LIMELIGHT_NAME, LimelightConstants.ROBOT_TO_CAMERA);
+
+    // more cameras go in this list
+    vision = new VisionFusion(List.of(limelight));
+
     /** Drivesystem instantiations */
-    driveSystem = new DriveSystem();
-    driveSystem.setDefaultCommand(driveSystem.driveWithJoystick(driverLeft, driverRight));
+    driveSystem = new DriveSystem(vision);
+    driveSystem.setDefaultCommand(new ProfiledCommand(driveSystem.driveWithJoystick(driverLeft, driverRight)));
+
+    // vision from the simulated pose when there's no camera
+    simulatedLimelight = Robot.isSimulation() ? new SimulatedLimelight(
+      LimelightConstants.LIMELIGHT_NAME,
+      LimelightConstants.ROBOT_TO_CAMERA,
+      driveSystem::getSimulatedPose
+    ) : null;
 
     aLEDSub = new AddressableLEDSubsystem();
   
     lSystem = new LiftSystem();
-    lSystem.setDefaultCommand(lSystem.liftArms(operator));
-
-    /** Limelight instantiations */
-    limelight = new Limelight();
+    lSystem.setDefaultCommand(new ProfiledCommand(lSystem.liftArms(operator)));
 
     /** Gripper instantiations */
     gripperSystem = new GripperSystem(limelight);
-    gripperSystem.setDefaultCommand(gripperSystem.hold());
+    gripperSystem.setDefaultCommand(new ProfiledCommand(gripperSystem.hold()));
 
     liftThenLeave = new LiftThenLeave(driveSystem, lSystem, gripperSystem);
 
+    // every spark max exists now, slow down the status frames nothing reads
+    StatusFrames.applyAll();
+
+    // driver LED alerts for overruns, brownouts, low battery and lost devices
+    health = new RobotHealth(aLEDSub, driveSystem, lSystem, limelight);
+
     /** Dashboard sendables for the subsystems go here */
     SmartDashboard.putData(driveSystem);
     SmartDashboard.putData(gripperSystem);
     SmartDashboard.putData(limelight);
     SmartDashboard.putData(lSystem);
+    SmartDashboard.putData(aLEDSub);
+    SmartDashboard.putData("Health", health);
 
     togglePipeline = new InstantCommand(limelight::togglePipeline);
     
@@ -142,18 +192,29 @@ public class RobotContainer {
     Shuffleboard.getTab("Hardware").add(getCheckCommand());
     Shuffleboard.getTab("Hardware").add(CommandScheduler.getInstance());
 
-    // autos
-    autoChooser = new SendableChooser<>();
-    autoChooser.setDefaultOption("Back up and balance", Autos.backUpAndBalance(driveSystem, lSystem, gripperSystem, aLEDSub));
-    autoChooser.addOption("Do nothing", new InstantCommand());
+    // autos, trajectories are generated at build time so this is just a file read
+    TrajectoryLibrary.load(new File(Filesystem.getDeployDirectory(), "trajectories"));
+
+    autos.put("Back up and balance", new ProfiledCommand(Autos.backUpAndBalance(driveSystem, lSystem, gripperSystem, aLEDSub)));
+    autos.put("Do nothing", new ProfiledCommand(new InstantCommand()));
 
     // blue side
-    autoChooser.addOption("2-Side Blue Leave", Autos.leftSideBlue(driveSystem, lSystem, gripperSystem, aLEDSub));
-    autoChooser.addOption("8-Side Blue Leave", Autos.rightSideBlue(driveSystem, lSystem, gripperSystem, aLEDSub));
+    autos.put("2-Side Blue Leave", new ProfiledCommand(Autos.leftSideBlue(driveSystem, lSystem, gripperSystem, aLEDSub)));
+    autos.put("8-Side Blue Leave", new ProfiledCommand(Autos.rightSideBlue(driveSystem, lSystem, gripperSystem, aLEDSub)));
 
     // red side
-    autoChooser.addOption("8-Side Red Leave", Autos.rightSideRed(driveSystem, lSystem, gripperSystem, aLEDSub));
-    autoChooser.addOption("2-Side Red Leave", Autos.leftSideRed(driveSystem, lSystem, gripperSystem, aLEDSub));
+    autos.put("8-Side Red Leave", new ProfiledCommand(Autos.rightSideRed(driveSystem, lSystem, gripperSystem, aLEDSub)));
+    autos.put("2-Side Red Leave", new ProfiledCommand(Autos.leftSideRed(driveSystem, lSystem, gripperSystem, aLEDSub)));
+
+    autoChooser = new SendableChooser<>();
+    autos.forEach(autoChooser::addOption);
+    autoChooser.setDefaultOption("Back up and balance", autos.get("Back up and balance"));
+
+    // drivetrain characterization, not autos so the auto tests skip them
+    autoChooser.addOption("Characterize quasistatic forward", new ProfiledCommand(new CharacterizeDrive(Test.QUASISTATIC, true, driveSystem)));
+    autoChooser.addOption("Characterize quasistatic backward", new ProfiledCommand(new CharacterizeDrive(Test.QUASISTATIC, false, driveSystem)));
+    autoChooser.addOption("Characterize dynamic forward", new ProfiledCommand(new CharacterizeDrive(Test.DYNAMIC, true, driveSystem)));
+    autoChooser.addOption("Characterize dynamic backward", new ProfiledCommand(new CharacterizeDrive(Test.DYNAMIC, false, driveSystem)));
 
     SmartDashboard.putData(autoChooser);
   }
@@ -168,23 +229,26 @@ public class RobotContainer {
    * joysticks}.
    */
   private void configureBindings() {
-    rightBumper.whileTrue(gripperSystem.coneIntake(aLEDSub));
-    rightTrigger.whileTrue(gripperSystem.cubeIntake(aLEDSub));
-    leftTrigger.whileTrue(gripperSystem.outtake(aLEDSub));
+    rightBumper.whileTrue(new ProfiledCommand(gripperSystem.coneIntake(aLEDSub)));
+    rightTrigger.whileTrue(new ProfiledCommand(gripperSystem.cubeIntake(aLEDSub)));
+    leftTrigger.whileTrue(new ProfiledCommand(gripperSystem.outtake(aLEDSub)));
 
-    xButton.whileTrue(aLEDSub.HumanColor(ColorType.YELLOW));
-    aButton.whileTrue(aLEDSub.HumanColor(ColorType.PURPLE));
-    yButton.onTrue(togglePipeline);
+    xButton.whileTrue(new ProfiledCommand(aLEDSub.HumanColor(ColorType.YELLOW)));
+    aButton.whileTrue(new ProfiledCommand(aLEDSub.HumanColor(ColorType.PURPLE)));
+    yButton.onTrue(new ProfiledCommand(togglePipeline));
 
     // autobalance driver buttons
-    balanceLeftBtn.whileTrue(driveSystem.autoBalance());
-    balanceRightBtn.whileTrue(driveSystem.autoBalance());
+    balanceLeftBtn.whileTrue(new ProfiledCommand(driveSystem.autoBalance()));
+    balanceRightBtn.whileTrue(new ProfiledCommand(driveSystem.autoBalance()));
+
+    // vision alignment
+    alignBtn.whileTrue(new ProfiledCommand(new AlignToTarget(driveSystem, limelight)));
     
     // operator assist arm lift buttons
-    liftUp.whileTrue(lSystem.liftArmsToPosition(LiftConstants.TOP_POSITION));
-    liftMidL.whileTrue(lSystem.liftArmsToPosition(LiftConstants.MID_POSITION));
-    liftMidR.whileTrue(lSystem.liftArmsToPosition(LiftConstants.MID_POSITION));
-    liftDown.whileTrue(lSystem.liftArmsToPosition(LiftConstants.LOW_POSITION));
+    liftUp.whileTrue(new ProfiledCommand(lSystem.liftArmsToPosition(LiftConstants.TOP_POSITION)));
+    liftMidL.whileTrue(new ProfiledCommand(lSystem.liftArmsToPosition(LiftConstants.MID_POSITION)));
+    liftMidR.whileTrue(new ProfiledCommand(lSystem.liftArmsToPosition(LiftConstants.MID_POSITION)));
+    liftDown.whileTrue(new ProfiledCommand(lSystem.liftArmsToPosition(LiftConstants.LOW_POSITION)));
   }
 
   private CommandBase getCheckCommand() {
@@ -211,6 +275,36 @@ public class RobotContainer {
     return autoChooser.getSelected();
   }
 
+  /**
+   * @return every autonomous routine in the chooser by name, used by the auto tests
+   */
+  public Map<String, Command> getAutos() {
+    return Collections.unmodifiableMap(autos);
+  }
+
+  public Limelight getLimelight() {
+    return limelight;
+  }
+
+  public RobotHealth getHealth() {
+    return health;
+  }
+
+  public AddressableLEDSubsystem getLEDs() {
+    return aLEDSub;
+  }
+
+  /**
+   * @return the drive system, used by the auto tests to reset and report pose
+   */
+  public DriveSystem getDriveSystem() {
+    return driveSystem;
+  }
+
+  public LiftSystem getLiftSystem() {
+    return lSystem;
+  }
+
   public Command getTestCommand() {
     // return all test routines chained together
     return new SequentialCommandGroup(
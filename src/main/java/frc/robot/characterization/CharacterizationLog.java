@@ -0,0 +1,181 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.characterization;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Records characterization samples on a notifier into a buffer allocated once, then writes
+ * them to disk on a background thread after the run. The robot loop never touches the buffer.
+ *
+ * <pre>
+ * int   magic
+ * int   fields per sample
+ * int   number of samples
+ * per sample, as floats:
+ *   time (s), left volts, right volts, left (m), right (m), left (m/s), right (m/s)
+ * </pre>
+ */
+public class CharacterizationLog {
+  /** floats per sample */
+  public static final int FIELDS = 7;
+
+  /** file extension for characterization runs */
+  public static final String EXTENSION = ".char";
+
+  /** "CHR1" */
+  static final int MAGIC = 0x43485231;
+
+  /** writes one sample into the buffer, called on the notifier thread */
+  @FunctionalInterface
+  public interface Sampler {
+    /**
+     * @param buffer samples
+     * @param offset index to write {@link CharacterizationLog#FIELDS} floats at
+     * @param time seconds since the run started
+     */
+    void sample(float[] buffer, int offset, double time);
+  }
+
+  private final Sampler sampler;
+  private final float[] buffer;
+  private final int maxSamples;
+
+  private final Notifier notifier;
+  private final double period;
+
+  /** written under the buffer lock, volatile so the dashboard can read it without waiting */
+  private volatile int count;
+
+  /** guarded by buffer */
+  private boolean recording;
+  private double startTime;
+
+  /** set while a previous run is still being written */
+  private volatile boolean flushing;
+
+  /** name of the current run, used for the file name */
+  private String name;
+
+  /**
+   * @param sampler reads the sensors
+   * @param maxSamples samples kept per run, later samples are dropped
+   * @param period seconds between samples
+   */
+  public CharacterizationLog(Sampler sampler, int maxSamples, double period) {
+    this.sampler = sampler;
+    this.maxSamples = maxSamples;
+    this.period = period;
+
+    buffer = new float[maxSamples * FIELDS];
+
+    notifier = new Notifier(this::sample);
+    notifier.setName("Characterization");
+  }
+
+  /**
+   * start recording a new run
+   * @param name file name prefix for the run
+   * @return false if the last run is still being written
+   */
+  public boolean start(String name) {
+    if (flushing) {
+      DriverStation.reportWarning("Characterization run " + this.name + " is still being saved", false);
+      return false;
+    }
+
+    synchronized (buffer) {
+      this.name = name;
+      count = 0;
+      startTime = Timer.getFPGATimestamp();
+      recording = true;
+    }
+
+    notifier.startPeriodic(period);
+    return true;
+  }
+
+  /** stop recording and write the run to disk in the background */
+  public void stop() {
+    notifier.stop();
+
+    // the notifier can't be holding the lock long, it takes one sample
+    synchronized (buffer) {
+      if (!recording) {
+        return;
+      }
+
+      recording = false;
+    }
+
+    flushing = true;
+
+    Thread writer = new Thread(this::flush, "Characterization writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * @return samples recorded in the current or last run
+   */
+  public int getSampleCount() {
+    return count;
+  }
+
+  /** notifier callback */
+  private void sample() {
+    synchronized (buffer) {
+      if (!recording || count >= maxSamples) {
+        return;
+      }
+
+      sampler.sample(buffer, count * FIELDS, Timer.getFPGATimestamp() - startTime);
+      count++;
+    }
+  }
+
+  /** runs on the writer thread */
+  private void flush() {
+    File directory = RobotBase.isReal()
+      ? new File("/home/lvuser/characterization")
+      : new File(Filesystem.getOperatingDirectory(), "characterization");
+
+    try {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Could not create " + directory);
+      }
+
+      File file = new File(directory, name + "-" + System.currentTimeMillis() + EXTENSION);
+
+      synchronized (buffer) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+          out.writeInt(MAGIC);
+          out.writeInt(FIELDS);
+          out.writeInt(count);
+
+          for (int i = 0; i < count * FIELDS; i++) {
+            out.writeFloat(buffer[i]);
+          }
+        }
+      }
+
+      DriverStation.reportWarning("Saved " + count + " characterization samples to " + file, false);
+    } catch (IOException e) {
+      DriverStation.reportError("Could not save characterization run: " + e.getMessage(), false);
+    } finally {
+      flushing = false;
+    }
+  }
+}
@@ -0,0 +1,234 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.characterization;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Desktop tool that fits kS, kV and kA to characterization runs copied off the robot and
+ * suggests spark max velocity gains. Run with the fitCharacterization gradle task.
+ *
+ * <p>Model: volts = kS * sign(velocity) + kV * velocity + kA * acceleration
+ */
+public final class FitCharacterization {
+  /** meters / second, slower samples are mostly static friction noise */
+  private static final double MIN_VELOCITY = 0.05;
+
+  /** LQR weights, largest acceptable velocity error (m/s) and control effort (volts) */
+  private static final double MAX_VELOCITY_ERROR = 0.2;
+  private static final double MAX_EFFORT = 7.0;
+
+  /** seconds - the spark max loop is faster, but its filtered velocity lags about this much */
+  private static final double CONTROL_PERIOD = 0.02;
+
+  /** volts the spark max scales duty cycle gains by */
+  private static final double NOMINAL_VOLTAGE = 12.0;
+
+  /** one side of the drivetrain, rows of sign(v), v, a and measured volts */
+  private static class Data {
+    final List<double[]> rows = new ArrayList<>();
+
+    void add(double voltage, double velocity, double acceleration) {
+      if (Math.abs(velocity) < MIN_VELOCITY) {
+        return;
+      }
+
+      rows.add(new double[] { Math.signum(velocity), velocity, acceleration, voltage });
+    }
+
+    void addAll(Data other) {
+      rows.addAll(other.rows);
+    }
+  }
+
+  /**
+   * @param args characterization files or directories of them
+   * @throws IOException if a file can't be read
+   */
+  public static void main(String[] args) throws IOException {
+    Data left = new Data();
+    Data right = new Data();
+
+    for (String arg : args) {
+      File path = new File(arg);
+      File[] files = path.isDirectory()
+        ? path.listFiles((dir, name) -> name.endsWith(CharacterizationLog.EXTENSION))
+        : new File[] { path };
+
+      for (File file : files) {
+        read(file, left, right);
+      }
+    }
+
+    if (left.rows.isEmpty()) {
+      System.out.println("No moving samples found, pass the " + CharacterizationLog.EXTENSION + " files from the robot");
+      return;
+    }
+
+    Data both = new Data();
+    both.addAll(left);
+    both.addAll(right);
+
+    report("Left", left);
+    report("Right", right);
+    double[] gains = report("Combined", both);
+
+    double kV = gains[1];
+    double kA = gains[2];
+    double k = lqrGain(kV, kA);
+
+    System.out.println();
+    System.out.printf("LQR velocity gain: %.4f V / (m/s)%n", k);
+    System.out.println("Suggested DriveConstants:");
+    System.out.printf("  VELOCITY_P = %.5f;%n", k / NOMINAL_VOLTAGE);
+    System.out.println("  VELOCITY_D = 0.0;");
+    System.out.printf("  VELOCITY_FF = %.5f;%n", kV / NOMINAL_VOLTAGE);
+    System.out.printf("kS (%.3f V) can be added as arbitrary feedforward in the direction of travel%n", gains[0]);
+  }
+
+  /** read one run, estimating acceleration with central differences */
+  private static void read(File file, Data left, Data right) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != CharacterizationLog.MAGIC) {
+        throw new IOException(file.getName() + " is not a characterization file");
+      }
+
+      int fields = in.readInt();
+      int count = in.readInt();
+
+      float[][] samples = new float[count][fields];
+      for (int i = 0; i < count; i++) {
+        for (int j = 0; j < fields; j++) {
+          samples[i][j] = in.readFloat();
+        }
+      }
+
+      // first and last samples have no neighbor to difference with
+      for (int i = 1; i < count - 1; i++) {
+        double dt = samples[i + 1][0] - samples[i - 1][0];
+        if (dt <= 0) {
+          continue;
+        }
+
+        double leftAcceleration = (samples[i + 1][5] - samples[i - 1][5]) / dt;
+        double rightAcceleration = (samples[i + 1][6] - samples[i - 1][6]) / dt;
+
+        left.add(samples[i][1], samples[i][5], leftAcceleration);
+        right.add(samples[i][2], samples[i][6], rightAcceleration);
+      }
+
+      System.out.println("Read " + count + " samples from " + file.getName());
+    }
+  }
+
+  /**
+   * ordinary least squares fit, printed with r squared
+   * @return kS, kV, kA
+   */
+  private static double[] report(String name, Data data) {
+    double[][] normal = new double[3][4];
+
+    // build the normal equations X^T X b = X^T y
+    for (double[] row : data.rows) {
+      for (int i = 0; i < 3; i++) {
+        for (int j = 0; j < 3; j++) {
+          normal[i][j] += row[i] * row[j];
+        }
+        normal[i][3] += row[i] * row[3];
+      }
+    }
+
+    double[] gains = solve(normal);
+
+    double mean = 0;
+    for (double[] row : data.rows) {
+      mean += row[3];
+    }
+    mean /= data.rows.size();
+
+    double residual = 0;
+    double total = 0;
+    for (double[] row : data.rows) {
+      double predicted = gains[0] * row[0] + gains[1] * row[1] + gains[2] * row[2];
+      residual += (row[3] - predicted) * (row[3] - predicted);
+      total += (row[3] - mean) * (row[3] - mean);
+    }
+
+    System.out.printf(
+      "%-8s kS = %.4f V, kV = %.4f V/(m/s), kA = %.4f V/(m/s^2), r^2 = %.4f (%d samples)%n",
+      name, gains[0], gains[1], gains[2], 1 - residual / total, data.rows.size()
+    );
+
+    return gains;
+  }
+
+  /** gaussian elimination with partial pivoting on an augmented 3x4 matrix */
+  private static double[] solve(double[][] m) {
+    int n = m.length;
+
+    for (int col = 0; col < n; col++) {
+      int pivot = col;
+      for (int row = col + 1; row < n; row++) {
+        if (Math.abs(m[row][col]) > Math.abs(m[pivot][col])) {
+          pivot = row;
+        }
+      }
+
+      double[] swap = m[col];
+      m[col] = m[pivot];
+      m[pivot] = swap;
+
+      for (int row = col + 1; row < n; row++) {
+        double factor = m[row][col] / m[col][col];
+        for (int j = col; j <= n; j++) {
+          m[row][j] -= factor * m[col][j];
+        }
+      }
+    }
+
+    double[] x = new double[n];
+    for (int row = n - 1; row >= 0; row--) {
+      double sum = m[row][n];
+      for (int j = row + 1; j < n; j++) {
+        sum -= m[row][j] * x[j];
+      }
+      x[row] = sum / m[row][row];
+    }
+
+    return x;
+  }
+
+  /**
+   * discrete LQR gain for the velocity system dv/dt = -kV/kA v + 1/kA u
+   * @return volts per m/s of velocity error
+   */
+  private static double lqrGain(double kV, double kA) {
+    // zero order hold discretization
+    double a = Math.exp(-kV / kA * CONTROL_PERIOD);
+    double b = (1 - a) / kV;
+
+    // Bryson's rule
+    double q = 1 / (MAX_VELOCITY_ERROR * MAX_VELOCITY_ERROR);
+    double r = 1 / (MAX_EFFORT * MAX_EFFORT);
+
+    // scalar riccati equation: b^2 p^2 + (r - a^2 r - q b^2) p - q r = 0
+    double qa = b * b;
+    double qb = r - a * a * r - q * b * b;
+    double qc = -q * r;
+    double p = (-qb + Math.sqrt(qb * qb - 4 * qa * qc)) / (2 * qa);
+
+    return a * b * p / (r + b * b * p);
+  }
+
+  private FitCharacterization() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+}
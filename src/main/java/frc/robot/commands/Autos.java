@@ -4,7 +4,14 @@
 
 package frc.robot.commands;
 
+import java.util.function.Supplier;
+
+import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
@@ -17,38 +24,69 @@ import frc.robot.Constants.DriveConstants;
 import frc.robot.Constants.LiftConstants;
 import frc.robot.commands.drive.DriveDistance;
 import frc.robot.commands.drive.DriveVelocity;
+import frc.robot.commands.drive.FollowTrajectory;
 import frc.robot.commands.drive.RotateToAngle;
 import frc.robot.subsystems.AddressableLEDSubsystem;
 import frc.robot.subsystems.DriveSystem;
 import frc.robot.subsystems.GripperSystem;
 import frc.robot.subsystems.LiftSystem;
+import frc.robot.trajectory.AutoTrajectories;
+import frc.robot.trajectory.TrajectoryLibrary;
 
 /** Example static factory for an autonomous command. */
 public final class Autos {
+  /** names a step so the auto tests can report how long it took */
+  private static Command step(String name, Command command) {
+    return new TracedCommand(name, command);
+  }
+
+  /**
+   * put the pose estimate where the auto starts, so vision only has to correct it
+   * @param start read when the auto starts
+   */
+  private static Command startAt(Supplier<Pose2d> start, DriveSystem drive) {
+    return step("Reset pose", Commands.runOnce(() -> drive.resetPose(start.get())));
+  }
+
+  /**
+   * follow a deployed trajectory out of the community
+   * @param name trajectory from {@link AutoTrajectories}
+   * @param fallback drive steps to run if the trajectory wasn't deployed
+   */
+  private static Command leaveCommunity(String name, DriveSystem drive, Command fallback) {
+    Trajectory trajectory = TrajectoryLibrary.get(name);
+
+    if (trajectory == null) {
+      return fallback;
+    }
+
+    return step("Leave community", new FollowTrajectory(trajectory, drive));
+  }
+
   /** intake, lift arms, outtake, lower arms */
   private static CommandBase liftAndOuttake(LiftSystem lift, GripperSystem gripper, AddressableLEDSubsystem led) {
     return Commands.sequence(
       // intake preloaded game piece
-      gripper.hold().withTimeout(0.5),
+      step("Intake preload", gripper.hold().withTimeout(0.5)),
       // run until either command finishes
-      new ParallelRaceGroup(
+      step("Lift to top", new ParallelRaceGroup(
         // hold preloaded game piece in gripper
         gripper.hold(),
         // lift arms to high scoring position
         lift.liftArmsToPosition(LiftConstants.TOP_POSITION)
         // cancel command group if not finished in x seconds
         //new WaitCommand(9)
-      ),
+      )),
       // outtake game piece
-      gripper.outtake(led).withTimeout(0.8),
+      step("Outtake", gripper.outtake(led).withTimeout(0.8)),
       // lower arms
-      lift.liftArmsToPosition(LiftConstants.LOW_POSITION)
+      step("Lower arms", lift.liftArmsToPosition(LiftConstants.LOW_POSITION))
     );
   }
 
   public static CommandBase rotateThenDriveAuto(DriveSystem driveSubsystem) {
     return Commands.sequence(
-      new RotateToAngle(new Rotation2d(180), driveSubsystem),
+      new RotateToAngle(Rotation2d.fromDegrees(180), driveSubsystem),
       new DriveDistance( 3.0, Constants.AutoConstants.FAST_SPEED, driveSubsystem)
     );
   }
@@ -67,9 +105,10 @@ public final class Autos {
   /** robot drives onto charge station and balances */
   public static CommandBase backUpAndBalance(DriveSystem drivesystem, LiftSystem lift, GripperSystem gripper, AddressableLEDSubsystem led) {
     return Commands.sequence(
+      startAt(() -> DriverStation.getAlliance() == Alliance.Red ? AutoConstants.RED_5_START : AutoConstants.BLUE_5_START, drivesystem),
       liftAndOuttake(lift, gripper, led),
-      new DriveDistance(-1.5, 1.8, drivesystem).withTimeout(2), 
-      drivesystem.autoBalance()
+      step("Drive onto charge station", new DriveDistance(-1.5, 1.8, drivesystem).withTimeout(2)), 
+      step("Balance", drivesystem.autoBalance())
     );
       
   }
@@ -77,46 +116,58 @@ public final class Autos {
   /** robot drives onto charge station, balances, drives out of community, then back onto charge station and balances */
   public static CommandBase leftSideBlue(DriveSystem drivesystem, LiftSystem lift, GripperSystem gripper, AddressableLEDSubsystem led) {
     return Commands.sequence(
+      startAt(() -> AutoConstants.BLUE_2_START, drivesystem),
       liftAndOuttake(lift, gripper, led),
-      new RotateToAngle(Rotation2d.fromDegrees(40), drivesystem).withTimeout(1),
-      new DriveDistance(-0.5, 1, drivesystem), 
-      new RotateToAngle(Rotation2d.fromDegrees(-40), drivesystem).withTimeout(1),
-      new DriveDistance(-1.7, 1.3, drivesystem), 
-      new WaitCommand(1.5)
+      leaveCommunity(AutoTrajectories.LEFT_SIDE_BLUE, drivesystem, Commands.sequence(
+        step("Turn out", new RotateToAngle(Rotation2d.fromDegrees(40), drivesystem).withTimeout(1)),
+        step("Back out", new DriveDistance(-0.5, 1, drivesystem)),
+        step("Turn straight", new RotateToAngle(Rotation2d.fromDegrees(-40), drivesystem).withTimeout(1)),
+        step("Leave community", new DriveDistance(-1.7, 1.3, drivesystem))
+      )),
+      step("Wait", new WaitCommand(1.5))
     );
   }
 
   /** robot drives onto charge station, balances, drives out of community, then back onto charge station and balances */
   public static CommandBase rightSideBlue(DriveSystem drivesystem, LiftSystem lift, GripperSystem gripper, AddressableLEDSubsystem led) {
     return Commands.sequence(
+      startAt(() -> AutoConstants.BLUE_8_START, drivesystem),
       liftAndOuttake(lift, gripper, led),
-      new RotateToAngle(Rotation2d.fromDegrees(-40), drivesystem).withTimeout(1),
-      new DriveDistance(-0.5, 1, drivesystem), 
-      new RotateToAngle(Rotation2d.fromDegrees(40), drivesystem).withTimeout(1),
-      new DriveDistance(-3.05, 1.5, drivesystem), 
-      new WaitCommand(1.5)
+      leaveCommunity(AutoTrajectories.RIGHT_SIDE_BLUE, drivesystem, Commands.sequence(
+        step("Turn out", new RotateToAngle(Rotation2d.fromDegrees(-40), drivesystem).withTimeout(1)),
+        step("Back out", new DriveDistance(-0.5, 1, drivesystem)),
+        step("Turn straight", new RotateToAngle(Rotation2d.fromDegrees(40), drivesystem).withTimeout(1)),
+        step("Leave community", new DriveDistance(-3.05, 1.5, drivesystem))
+      )),
+      step("Wait", new WaitCommand(1.5))
     );
   }
 
   public static CommandBase leftSideRed(DriveSystem drive, LiftSystem lift, GripperSystem gripper, AddressableLEDSubsystem led) {
     return Commands.sequence(
+      startAt(() -> AutoConstants.RED_2_START, drive),
       liftAndOuttake(lift, gripper, led),
-      new RotateToAngle(Rotation2d.fromDegrees(40), drive).withTimeout(1),
-      new DriveDistance(-0.5, 1, drive), 
-      new RotateToAngle(Rotation2d.fromDegrees(-40), drive).withTimeout(1),
-      new DriveDistance(-3.05, 1.5, drive), 
-      new WaitCommand(1.5)
+      leaveCommunity(AutoTrajectories.LEFT_SIDE_RED, drive, Commands.sequence(
+        step("Turn out", new RotateToAngle(Rotation2d.fromDegrees(40), drive).withTimeout(1)),
+        step("Back out", new DriveDistance(-0.5, 1, drive)),
+        step("Turn straight", new RotateToAngle(Rotation2d.fromDegrees(-40), drive).withTimeout(1)),
+        step("Leave community", new DriveDistance(-3.05, 1.5, drive))
+      )),
+      step("Wait", new WaitCommand(1.5))
     );
   }
 
   public static CommandBase rightSideRed(DriveSystem drive, LiftSystem lift, GripperSystem gripper, AddressableLEDSubsystem led) {
     return Commands.sequence(
+      startAt(() -> AutoConstants.RED_8_START, drive),
       liftAndOuttake(lift, gripper, led),
-      new RotateToAngle(Rotation2d.fromDegrees(-40), drive).withTimeout(1),
-      new DriveDistance(-0.5, 1, drive), 
-      new RotateToAngle(Rotation2d.fromDegrees(40), drive).withTimeout(1),
-      new DriveDistance(-1.7, 1.3, drive), 
-      new WaitCommand(1.5)
+      leaveCommunity(AutoTrajectories.RIGHT_SIDE_RED, drive, Commands.sequence(
+        step("Turn out", new RotateToAngle(Rotation2d.fromDegrees(-40), drive).withTimeout(1)),
+        step("Back out", new DriveDistance(-0.5, 1, drive)),
+        step("Turn straight", new RotateToAngle(Rotation2d.fromDegrees(40), drive).withTimeout(1)),
+        step("Leave community", new DriveDistance(-1.7, 1.3, drive))
+      )),
+      step("Wait", new WaitCommand(1.5))
     );
   }
 
@@ -0,0 +1,46 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.WrapperCommand;
+import frc.robot.util.LoopProfiler;
+
+/**
+ * Wraps a scheduled command and records its own execute() and isFinished() time each loop in the
+ * loop profiler, under the command's name. The scheduler has no callback before execute(), so this
+ * is the only way to leave out the commands around it.
+ */
+public class ProfiledCommand extends WrapperCommand {
+  private final LoopProfiler.Phase phase;
+
+  /** nanoseconds execute() took this loop */
+  private long executeTime;
+
+  /**
+   * @param command command scheduled by a binding, a default command or an auto
+   */
+  public ProfiledCommand(Command command) {
+    super(command);
+    phase = LoopProfiler.getInstance().commandPhase(command.getName());
+  }
+
+  @Override
+  public void execute() {
+    long start = System.nanoTime();
+    super.execute();
+    executeTime = System.nanoTime() - start;
+  }
+
+  @Override
+  public boolean isFinished() {
+    long start = System.nanoTime();
+    boolean finished = super.isFinished();
+
+    // the scheduler calls isFinished() right after execute(), one sample per loop
+    phase.record(executeTime + System.nanoTime() - start);
+    return finished;
+  }
+}
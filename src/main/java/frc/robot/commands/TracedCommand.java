@@ -0,0 +1,64 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.WrapperCommand;
+
+/**
+ * Wraps one step of an autonomous routine and reports how long it ran. Steps inside a
+ * command group are never seen by the scheduler, so this is how the auto tests
+ * get per-command durations.
+ */
+public class TracedCommand extends WrapperCommand {
+  /** receives every finished step */
+  public interface Listener {
+    /**
+     * @param name step name
+     * @param start FPGA time the step started - seconds
+     * @param end FPGA time the step ended - seconds
+     * @param interrupted whether the step was interrupted or timed out of its group
+     */
+    void stepFinished(String name, double start, double end, boolean interrupted);
+  }
+
+  /** nothing listens on the robot, only the auto tests set this */
+  private static Listener listener;
+
+  private final String name;
+  private double startTime;
+
+  /**
+   * @param name name reported to the listener
+   * @param command the step being traced
+   */
+  public TracedCommand(String name, Command command) {
+    super(command);
+    this.name = name;
+  }
+
+  /**
+   * @param newListener listener for every traced step, null to stop listening
+   */
+  public static void setListener(Listener newListener) {
+    listener = newListener;
+  }
+
+  @Override
+  public void initialize() {
+    startTime = Timer.getFPGATimestamp();
+    super.initialize();
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    super.end(interrupted);
+
+    if (listener != null) {
+      listener.stepFinished(name, startTime, Timer.getFPGATimestamp(), interrupted);
+    }
+  }
+}
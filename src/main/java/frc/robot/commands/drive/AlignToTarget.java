@@ -0,0 +1,114 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands.drive;
+
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.DifferentialDriveWheelSpeeds;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Limelight;
+import frc.robot.Limelight.TargetSnapshot;
+import frc.robot.subsystems.DriveSystem;
+
+import static frc.robot.Constants.DriveConstants.*;
+
+/**
+ * Turns the limelight onto its target. Each new frame is turned into a heading using the gyro
+ * angle from when the image was captured, so camera latency doesn't cause overshoot. Between
+ * frames the turn is closed on the gyro every loop.
+ */
+public class AlignToTarget extends CommandBase {
+  private final DriveSystem drive;
+  private final Limelight limelight;
+  private final ProfiledPIDController rotateController;
+
+  /** last frame used to set the goal */
+  private TargetSnapshot lastTarget;
+
+  /** whether a target has been seen since the command started */
+  private boolean hasGoal;
+
+  /**
+   * Creates a new AlignToTarget.
+   * @param drive drive subsystem
+   * @param limelight camera to aim
+   */
+  public AlignToTarget(DriveSystem drive, Limelight limelight) {
+    // Use addRequirements() here to declare subsystem dependencies.
+    this.drive = drive;
+    addRequirements(this.drive);
+
+    this.limelight = limelight;
+
+    rotateController = new ProfiledPIDController(
+      TURN_P,
+      0,
+      TURN_D,
+      drive.getTurnConstraints()
+    );
+    rotateController.enableContinuousInput(-Math.PI, Math.PI);
+    rotateController.setTolerance(TURN_TOLERANCE, ROTATION_VELOCITY_TOLERANCE);
+  }
+
+  // Called when the command is initially scheduled.
+  @Override
+  public void initialize() {
+    // frames from before the command started are still valid
+    lastTarget = null;
+    hasGoal = false;
+
+    rotateController.reset(drive.getGyroAngle().getRadians());
+
+    // only one target matters while aligning, so search less of the image
+    limelight.setCropEnabled(true);
+  }
+
+  // Called every time the scheduler runs while the command is scheduled.
+  @Override
+  public void execute() {
+    double current = drive.getGyroAngle().getRadians();
+
+    TargetSnapshot target = limelight.getSnapshot();
+    if (target != lastTarget) {
+      lastTarget = target;
+
+      // heading the robot had when the image was taken, tx is positive to the right
+      double headingAtCapture = drive.getHeadingAt(target.captureTime);
+      if (target.hasTargets && !Double.isNaN(headingAtCapture)) {
+        rotateController.setGoal(headingAtCapture - Math.toRadians(target.horizontalOffset));
+        hasGoal = true;
+      }
+    }
+
+    if (!hasGoal) {
+      drive.setVelocity(new DifferentialDriveWheelSpeeds(0, 0));
+      return;
+    }
+
+    // rad/s, profile velocity plus correction
+    double correction = rotateController.calculate(current);
+    double rotationVel = rotateController.getSetpoint().velocity + correction;
+
+    DifferentialDriveWheelSpeeds speeds = drive.inverseKinematics(new ChassisSpeeds(0, 0, rotationVel));
+    speeds.desaturate(MAX_SPEED);
+
+    drive.setVelocity(speeds);
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    limelight.setCropEnabled(false);
+
+    // stop motors
+    drive.setVelocity(new DifferentialDriveWheelSpeeds(0, 0));
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    return hasGoal && rotateController.atGoal();
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands.drive;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.characterization.CharacterizationLog;
+import frc.robot.subsystems.DriveSystem;
+
+import static frc.robot.Constants.DriveConstants.*;
+
+/**
+ * Drives straight with open loop voltage while the drive system records voltage, position and
+ * velocity. Copy the files off the robot and run the fitCharacterization gradle task on them.
+ */
+public class CharacterizeDrive extends CommandBase {
+  public enum Test {
+    /** slow voltage ramp, acceleration is close to zero so this finds kS and kV */
+    QUASISTATIC,
+    /** voltage step, mostly acceleration so this finds kA */
+    DYNAMIC
+  }
+
+  private final DriveSystem drive;
+  private final CharacterizationLog log;
+  private final Timer timer;
+
+  private final Test test;
+
+  /** 1 forward, -1 backward */
+  private final double direction;
+
+  /** file name prefix */
+  private final String name;
+
+  /** false if the last run was still being saved */
+  private boolean recording;
+
+  /**
+   * Creates a new CharacterizeDrive.
+   * @param test type of run
+   * @param forward drive direction
+   * @param drive drive subsystem
+   */
+  public CharacterizeDrive(Test test, boolean forward, DriveSystem drive) {
+    this.test = test;
+    this.direction = forward ? 1 : -1;
+    this.name = test.name().toLowerCase() + (forward ? "-forward" : "-backward");
+
+    this.drive = drive;
+    addRequirements(this.drive);
+
+    log = drive.getCharacterizationLog();
+    timer = new Timer();
+  }
+
+  // Called when the command is initially scheduled.
+  @Override
+  public void initialize() {
+    // faster feedback frames so the recording has more than one sample per loop
+    drive.setFeedbackPeriod(CHARACTERIZATION_FRAME_PERIOD);
+
+    recording = log.start(name);
+
+    timer.reset();
+    timer.start();
+  }
+
+  // Called every time the scheduler runs while the command is scheduled.
+  @Override
+  public void execute() {
+    double voltage = test == Test.QUASISTATIC
+      ? CHARACTERIZATION_RAMP_RATE * timer.get()
+      : CHARACTERIZATION_STEP_VOLTAGE;
+
+    drive.setVoltage(voltage * direction, voltage * direction);
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    timer.stop();
+    drive.setVoltage(0, 0);
+
+    // saved on a background thread
+    log.stop();
+
+    // back to the normal status frame rates, position depends on the odometry mode
+    drive.restoreFeedbackPeriod();
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    double timeout = test == Test.QUASISTATIC ? QUASISTATIC_TIMEOUT : DYNAMIC_TIMEOUT;
+    return !recording || timer.hasElapsed(timeout);
+  }
+}
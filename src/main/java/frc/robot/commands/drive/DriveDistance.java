@@ -74,10 +74,10 @@ public class DriveDistance extends CommandBase {
     // use rotation controller to drive straight
     double rotation = rotationController.calculate(error.getRadians(), 0);
 
-    // wheel speeds using rotation
+    // wheel speeds using rotation, kinematic sides are swapped from the motors
     var speeds = new DifferentialDriveWheelSpeeds(
-      velocity + rotation,
-      velocity - rotation
+      velocity - rotation,
+      velocity + rotation
     );
 
     // clamp wheel speeds
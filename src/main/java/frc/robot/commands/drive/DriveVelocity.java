@@ -58,10 +58,10 @@ public class DriveVelocity extends CommandBase {
     // calculate drive effort to stay straight
     double rotation = rotationController.calculate(error.getRadians(), 0);
 
-    // set drive speeds using rotation pid
+    // set drive speeds using rotation pid, kinematic sides are swapped from the motors
     DifferentialDriveWheelSpeeds speeds = new DifferentialDriveWheelSpeeds(
-      velocity - rotation,
-      velocity + rotation
+      velocity + rotation,
+      velocity - rotation
     );
     
     // clamp speeds
@@ -0,0 +1,89 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands.drive;
+
+import edu.wpi.first.math.controller.RamseteController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.DifferentialDriveWheelSpeeds;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.subsystems.DriveSystem;
+
+import static frc.robot.Constants.AutoConstants.*;
+import static frc.robot.Constants.DriveConstants.*;
+
+public class FollowTrajectory extends CommandBase {
+  private final DriveSystem drive;
+  private final RamseteController controller;
+  private final Timer timer;
+
+  /** trajectory relative to where the command starts */
+  private final Trajectory trajectory;
+
+  /** trajectory moved to the pose the command started at */
+  private Trajectory fieldTrajectory;
+
+  /**
+   * Creates a new FollowTrajectory.
+   * @param trajectory path starting at the origin, followed from wherever the robot is when scheduled
+   * @param drive drive subsystem
+   */
+  public FollowTrajectory(Trajectory trajectory, DriveSystem drive) {
+    this.trajectory = trajectory;
+
+    // Use addRequirements() here to declare subsystem dependencies.
+    this.drive = drive;
+    addRequirements(this.drive);
+
+    controller = new RamseteController(RAMSETE_B, RAMSETE_ZETA);
+    timer = new Timer();
+  }
+
+  // Called when the command is initially scheduled.
+  @Override
+  public void initialize() {
+    // start the path from the current pose, followed in odometry so vision corrections can't jerk
+    // the robot off the path
+    Pose2d start = drive.getOdometryPosition();
+    fieldTrajectory = trajectory.transformBy(new Transform2d(new Pose2d(), start));
+
+    timer.reset();
+    timer.start();
+  }
+
+  // Called every time the scheduler runs while the command is scheduled.
+  @Override
+  public void execute() {
+    // where the robot should be right now
+    Trajectory.State goal = fieldTrajectory.sample(timer.get());
+
+    // velocity along the path plus correction towards it
+    ChassisSpeeds speeds = controller.calculate(drive.getOdometryPosition(), goal);
+    DifferentialDriveWheelSpeeds wheelSpeeds = drive.inverseKinematics(speeds);
+
+    // clamp wheel speeds
+    wheelSpeeds.desaturate(MAX_SPEED);
+
+    drive.setVelocity(wheelSpeeds);
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    timer.stop();
+
+    // stop motors
+    drive.setVelocity(new DifferentialDriveWheelSpeeds(0, 0));
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    return timer.hasElapsed(trajectory.getTotalTimeSeconds());
+  }
+}
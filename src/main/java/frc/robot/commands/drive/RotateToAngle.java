@@ -4,7 +4,7 @@
 
 package frc.robot.commands.drive;
 
-import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.DifferentialDriveWheelSpeeds;
@@ -13,31 +13,43 @@ import frc.robot.subsystems.DriveSystem;
 
 import static frc.robot.Constants.DriveConstants.*;
 
+/**
+ * Turns in place along a trapezoid profile limited by what the drivetrain model can do.
+ * The profile velocity is fed forward and PID only corrects the error from the profile.
+ */
 public class RotateToAngle extends CommandBase {
   private final DriveSystem drive;
-  private final PIDController rotateController;
+  private final ProfiledPIDController rotateController;
 
   private Rotation2d start;
   private Rotation2d end;
 
   private final Rotation2d angle;
 
-  /** Creates a new RotateToAngle. */
+  /**
+   * Creates a new RotateToAngle.
+   * @param angle turn relative to the heading when the command starts, takes the shorter way around
+   * @param drive drive subsystem
+   */
   public RotateToAngle(Rotation2d angle, DriveSystem drive) {
     // Use addRequirements() here to declare subsystem dependencies.
     this.drive = drive;
     addRequirements(this.drive);
-    
+
     this.angle = angle;
 
-    rotateController = new PIDController(
-      ROTATION_P, 
-      ROTATION_I, 
-      ROTATION_D
+    rotateController = new ProfiledPIDController(
+      TURN_P,
+      0,
+      TURN_D,
+      drive.getTurnConstraints()
     );
-    
-    // set position tolerance for pid
-    rotateController.setTolerance(ROTATION_TOLERANCE);
+
+    // headings wrap, so 179 degrees to -179 degrees is a 2 degree turn
+    rotateController.enableContinuousInput(-Math.PI, Math.PI);
+
+    // set position and velocity tolerance for pid
+    rotateController.setTolerance(TURN_TOLERANCE, ROTATION_VELOCITY_TOLERANCE);
   }
 
   // Called when the command is initially scheduled.
@@ -49,8 +61,9 @@ public class RotateToAngle extends CommandBase {
     // set end rotation based on start
     end = start.plus(angle);
 
-    // reset rotation pid controller
-    rotateController.reset();
+    // start the profile from the current heading, at rest
+    rotateController.reset(start.getRadians());
+    rotateController.setGoal(end.getRadians());
   }
 
   // Called every time the scheduler runs while the command is scheduled.
@@ -59,11 +72,12 @@ public class RotateToAngle extends CommandBase {
     // get current angle
     Rotation2d current = drive.getGyroAngle();
 
-    // rad/s ??
-    double rotationVel = rotateController.calculate(current.getRadians(), end.getRadians());
+    // rad/s, profile velocity plus correction
+    double correction = rotateController.calculate(current.getRadians());
+    double rotationVel = rotateController.getSetpoint().velocity + correction;
 
     // convert radial velocity to drive speeds
-    ChassisSpeeds radial = new ChassisSpeeds(0, 0, -rotationVel);
+    ChassisSpeeds radial = new ChassisSpeeds(0, 0, rotationVel);
     DifferentialDriveWheelSpeeds speeds = drive.inverseKinematics(radial);
 
     // clamp wheel speeds
@@ -83,6 +97,6 @@ public class RotateToAngle extends CommandBase {
   // Returns true when the command should end.
   @Override
   public boolean isFinished() {
-    return rotateController.atSetpoint();
+    return rotateController.atGoal();
   }
 }
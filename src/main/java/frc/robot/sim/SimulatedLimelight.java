@@ -0,0 +1,363 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.DoubleSubscriber;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+
+import static frc.robot.Constants.LimelightConstants.*;
+
+/**
+ * Stands in for a limelight in simulation. Looks at the 2023 AprilTags from the simulated
+ * robot pose and publishes what the camera would on its table, after the configured
+ * latency and with noise and dropped frames.
+ *
+ * <p>Pipeline latency shrinks with the crop window and limits the frame rate, and pipeline
+ * switches take effect after a delay, so camera control can be tested.
+ *
+ * <p>Runs on its own notifier so frames arrive independently of the robot loop, like the real camera.
+ */
+public class SimulatedLimelight {
+  /** seconds, resolution of frame capture and publish times */
+  private static final double TICK = 0.001;
+
+  /** one captured frame waiting out its latency */
+  private static class Frame {
+    double captureTime;
+    double publishTime;
+
+    /** seconds */
+    double pipelineLatency;
+    int pipeline;
+
+    boolean hasTargets;
+    double tx;
+    double ty;
+    double ta;
+    double[] botPose;
+    String json;
+  }
+
+  private final Transform3d robotToCamera;
+  private final Supplier<Pose2d> robotPose;
+  private final List<AprilTag> tags;
+  private final Random random = new Random(342);
+
+  private final Notifier notifier;
+
+  /** frames captured but not yet published, in capture order */
+  private final ArrayDeque<Frame> pending = new ArrayDeque<>();
+
+  private double nextCapture;
+  private long heartbeat = 0;
+
+  /** pipeline frames are captured with */
+  private int activePipeline;
+
+  /** time the requested pipeline takes over, NaN when not switching */
+  private double switchTime = Double.NaN;
+
+  // configurable while running
+  private volatile double pipelineLatency = SIM_PIPELINE_LATENCY;
+  private volatile double captureLatency = SIM_CAPTURE_LATENCY;
+  private volatile double angleNoise = SIM_ANGLE_NOISE;
+  private volatile double poseNoise = SIM_POSE_NOISE;
+  private volatile double yawNoise = SIM_YAW_NOISE;
+  private volatile double dropout = SIM_DROPOUT;
+
+  /** true capture time of the last published frame - seconds */
+  private volatile double lastCaptureTime = Double.NaN;
+
+  private final NetworkTable table;
+
+  private final DoublePublisher validPublisher;
+  private final DoublePublisher horizontalPublisher;
+  private final DoublePublisher verticalPublisher;
+  private final DoublePublisher areaPublisher;
+  private final DoublePublisher skewPublisher;
+  private final DoublePublisher pipelineLatencyPublisher;
+  private final DoublePublisher captureLatencyPublisher;
+  private final DoublePublisher heartbeatPublisher;
+  private final DoublePublisher activePipelinePublisher;
+  private final DoubleArrayPublisher botPosePublisher;
+  private final StringPublisher jsonPublisher;
+
+  private final DoubleSubscriber pipelineSubscriber;
+  private final DoubleArraySubscriber cropSubscriber;
+
+  /**
+   * @param name networktables table to publish to
+   * @param robotToCamera camera position on the robot, odometry frame
+   * @param robotPose true robot pose on the field, called from the notifier thread
+   */
+  public SimulatedLimelight(String name, Transform3d robotToCamera, Supplier<Pose2d> robotPose) {
+    this.robotToCamera = robotToCamera;
+    this.robotPose = robotPose;
+
+    table = NetworkTableInstance.getDefault().getTable(name);
+
+    validPublisher = table.getDoubleTopic("tv").publish();
+    horizontalPublisher = table.getDoubleTopic("tx").publish();
+    verticalPublisher = table.getDoubleTopic("ty").publish();
+    areaPublisher = table.getDoubleTopic("ta").publish();
+    skewPublisher = table.getDoubleTopic("ts").publish();
+    pipelineLatencyPublisher = table.getDoubleTopic("tl").publish();
+    captureLatencyPublisher = table.getDoubleTopic("cl").publish();
+    heartbeatPublisher = table.getDoubleTopic("hb").publish();
+    activePipelinePublisher = table.getDoubleTopic("getpipe").publish();
+    botPosePublisher = table.getDoubleArrayTopic("botpose_wpiblue").publish();
+    jsonPublisher = table.getStringTopic("json").publish();
+
+    pipelineSubscriber = table.getDoubleTopic("pipeline").subscribe(0);
+    cropSubscriber = table.getDoubleArrayTopic("crop").subscribe(new double[0]);
+
+    List<AprilTag> layout;
+    try {
+      layout = AprilTagFieldLayout.loadFromResource(AprilTagFields.k2023ChargedUp.m_resourceFile).getTags();
+    } catch (IOException e) {
+      DriverStation.reportError("Could not load the AprilTag layout, simulated limelight sees nothing", false);
+      layout = List.of();
+    }
+    tags = layout;
+
+    nextCapture = Timer.getFPGATimestamp();
+    activePipeline = (int) pipelineSubscriber.get();
+
+    notifier = new Notifier(this::tick);
+    notifier.setName("Simulated Limelight");
+    notifier.startPeriodic(TICK);
+  }
+
+  /**
+   * @param pipeline seconds the pipeline takes on a full frame, reported as tl
+   * @param capture seconds between exposure and the pipeline starting, reported as cl
+   */
+  public void setLatency(double pipeline, double capture) {
+    pipelineLatency = pipeline;
+    captureLatency = capture;
+  }
+
+  /**
+   * @param angle standard deviation of tx and ty - degrees
+   * @param pose standard deviation of bot pose translation per meter to the tag - meters
+   * @param yaw standard deviation of bot pose yaw - degrees
+   */
+  public void setNoise(double angle, double pose, double yaw) {
+    angleNoise = angle;
+    poseNoise = pose;
+    yawNoise = yaw;
+  }
+
+  /**
+   * @param chance 0 through 1, chance a frame misses every tag
+   */
+  public void setDropout(double chance) {
+    dropout = chance;
+  }
+
+  /**
+   * @return FPGA time the last published frame was really captured - seconds
+   */
+  public double getLastCaptureTime() {
+    return lastCaptureTime;
+  }
+
+  /** capture frames on schedule and publish the ones whose latency has passed */
+  private void tick() {
+    double now = Timer.getFPGATimestamp();
+
+    // the camera takes a moment to switch pipelines
+    int requested = (int) pipelineSubscriber.get();
+    if (requested == activePipeline) {
+      switchTime = Double.NaN;
+    } else if (Double.isNaN(switchTime)) {
+      switchTime = now + SIM_PIPELINE_SWITCH_TIME;
+    } else if (now >= switchTime) {
+      activePipeline = requested;
+      switchTime = Double.NaN;
+    }
+
+    if (now >= nextCapture) {
+      Frame frame = capture(now);
+      pending.add(frame);
+
+      // the next frame waits for processing to finish
+      double period = Math.max(SIM_MIN_FRAME_PERIOD, frame.pipelineLatency);
+      nextCapture += period;
+
+      // don't try to catch up after a pause
+      if (nextCapture < now) {
+        nextCapture = now + period;
+      }
+    }
+
+    while (!pending.isEmpty() && pending.peek().publishTime <= now) {
+      publish(pending.poll(), now);
+    }
+  }
+
+  /** what the camera sees from the current pose */
+  private Frame capture(double now) {
+    // x min, x max, y min, y max from -1 to 1, full frame if not set
+    double[] crop = cropSubscriber.get();
+    if (crop.length != 4) {
+      crop = new double[] { -1, 1, -1, 1 };
+    }
+
+    // part of the processing time scales with the pixels searched
+    double cropArea = (crop[1] - crop[0]) * (crop[3] - crop[2]) / 4;
+
+    Frame frame = new Frame();
+    frame.captureTime = now;
+    frame.pipeline = activePipeline;
+    frame.pipelineLatency = pipelineLatency * (SIM_FIXED_LATENCY + (1 - SIM_FIXED_LATENCY) * cropArea);
+    frame.publishTime = now + frame.pipelineLatency + captureLatency;
+
+    Pose2d pose = robotPose.get();
+    Pose3d camera = new Pose3d(pose).transformBy(robotToCamera);
+
+    StringBuilder json = new StringBuilder("{\"Results\":{\"Fiducial\":[");
+    int count = 0;
+    double closest = Double.POSITIVE_INFINITY;
+
+    boolean dropped = random.nextDouble() < dropout;
+
+    for (AprilTag tag : dropped ? List.<AprilTag>of() : tags) {
+      // tag position in the camera frame: x forward, y left, z up
+      Translation3d relative = tag.pose.getTranslation()
+        .minus(camera.getTranslation())
+        .rotateBy(camera.getRotation().unaryMinus());
+
+      double distance = relative.getNorm();
+      if (relative.getX() <= 0 || distance > SIM_MAX_DISTANCE) {
+        continue;
+      }
+
+      double yaw = Math.toDegrees(Math.atan2(relative.getY(), relative.getX()));
+      double pitch = Math.toDegrees(Math.atan2(relative.getZ(), Math.hypot(relative.getX(), relative.getY())));
+      if (Math.abs(yaw) > HORIZONTAL_FOV / 2 || Math.abs(pitch) > VERTICAL_FOV / 2) {
+        continue;
+      }
+
+      // outside the crop window, x is positive to the right like tx
+      double imageX = Math.tan(Math.toRadians(-yaw)) / Math.tan(Math.toRadians(HORIZONTAL_FOV / 2));
+      double imageY = Math.tan(Math.toRadians(pitch)) / Math.tan(Math.toRadians(VERTICAL_FOV / 2));
+      if (imageX < crop[0] || imageX > crop[1] || imageY < crop[2] || imageY > crop[3]) {
+        continue;
+      }
+
+      // tags are only visible from the front
+      double tagYaw = tag.pose.getRotation().getZ();
+      double toCameraX = camera.getX() - tag.pose.getX();
+      double toCameraY = camera.getY() - tag.pose.getY();
+      double facing = (Math.cos(tagYaw) * toCameraX + Math.sin(tagYaw) * toCameraY) / Math.hypot(toCameraX, toCameraY);
+      if (facing <= 0) {
+        continue;
+      }
+
+      // limelight tx is positive to the right
+      double tx = -yaw + random.nextGaussian() * angleNoise;
+      double ty = pitch + random.nextGaussian() * angleNoise;
+
+      // tag size as a fraction of the image in each direction
+      double width = TAG_SIZE * facing / (2 * relative.getX() * Math.tan(Math.toRadians(HORIZONTAL_FOV / 2)));
+      double height = TAG_SIZE / (2 * relative.getX() * Math.tan(Math.toRadians(VERTICAL_FOV / 2)));
+      double ta = 100 * width * height;
+
+      // primary target is the largest
+      if (ta > frame.ta) {
+        frame.hasTargets = true;
+        frame.tx = tx;
+        frame.ty = ty;
+        frame.ta = ta;
+      }
+
+      closest = Math.min(closest, distance);
+
+      // the json reports the tag in robot space: x forward, y left, z up from the robot origin
+      Translation3d robotRelative = relative.rotateBy(robotToCamera.getRotation())
+        .plus(robotToCamera.getTranslation());
+
+      if (count++ > 0) {
+        json.append(',');
+      }
+      json.append("{\"fID\":").append(tag.ID)
+        .append(",\"tx\":").append(tx)
+        .append(",\"ty\":").append(ty)
+        .append(",\"ta\":").append(ta)
+        .append(",\"t6t_rs\":[").append(robotRelative.getX()).append(',').append(robotRelative.getY()).append(',')
+        .append(robotRelative.getZ()).append(",0,0,0]}");
+    }
+
+    if (frame.hasTargets) {
+      // the camera's own pose, like a limelight with no robot offset set. gets worse further from the tags
+      double error = poseNoise * closest;
+      frame.botPose = new double[] {
+        camera.getX() + random.nextGaussian() * error,
+        camera.getY() + random.nextGaussian() * error,
+        camera.getZ(),
+        Math.toDegrees(camera.getRotation().getX()),
+        Math.toDegrees(camera.getRotation().getY()),
+        Math.toDegrees(camera.getRotation().getZ()) + random.nextGaussian() * yawNoise
+      };
+    } else {
+      frame.botPose = new double[6];
+    }
+
+    json.append("],\"botpose_wpiblue\":[");
+    for (int i = 0; i < frame.botPose.length; i++) {
+      json.append(i > 0 ? "," : "").append(frame.botPose[i]);
+    }
+    json.append("],\"tl\":").append(frame.pipelineLatency * 1000)
+      .append(",\"cl\":").append(captureLatency * 1000)
+      .append(",\"ts\":").append(now * 1000)
+      .append(",\"pID\":").append(frame.pipeline)
+      .append(",\"v\":").append(frame.hasTargets ? 1 : 0)
+      .append("}}");
+    frame.json = json.toString();
+
+    return frame;
+  }
+
+  /** publish one frame the way the limelight does, json last since it marks a new frame */
+  private void publish(Frame frame, double now) {
+    long time = (long) (now * 1e6);
+
+    validPublisher.set(frame.hasTargets ? 1 : 0, time);
+    horizontalPublisher.set(frame.tx, time);
+    verticalPublisher.set(frame.ty, time);
+    areaPublisher.set(frame.ta, time);
+    skewPublisher.set(0, time);
+    botPosePublisher.set(frame.botPose, time);
+    captureLatencyPublisher.set(captureLatency * 1000, time);
+    heartbeatPublisher.set(++heartbeat, time);
+    activePipelinePublisher.set(frame.pipeline, time);
+    pipelineLatencyPublisher.set(frame.pipelineLatency * 1000, time);
+    jsonPublisher.set(frame.json, time);
+
+    lastCaptureTime = frame.captureTime;
+  }
+}
@@ -4,12 +4,26 @@
 
 package frc.robot.subsystems;
 
+import edu.wpi.first.util.sendable.SendableBuilder;
 import edu.wpi.first.wpilibj.AddressableLED;
 import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.util.Color;
+import edu.wpi.first.wpilibj.util.Color8Bit;
 import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.LEDPattern;
+
 import static frc.robot.Constants.LEDConstants.*;
 
+/**
+ * The strip is split into named segments, each showing the highest priority pattern set on it.
+ * Commands only change which pattern is on which layer. A separate notifier copies the shown
+ * frame of each segment into the buffer and pushes it to the strip, at its own rate and only when
+ * a frame changed.
+ */
 public class AddressableLEDSubsystem extends SubsystemBase {
   /** Creates a new AddressableLEDSubsystem. */
 
@@ -18,79 +32,218 @@ public class AddressableLEDSubsystem extends SubsystemBase {
     PURPLE;
   }
 
+  /** named runs of pixels */
+  public enum Segment {
+    DRIVER(0, DRIVER_START_RANGE),
+    HUMAN_PLAYER(DRIVER_START_RANGE, LENGTH);
+
+    /** first pixel */
+    public final int start;
+
+    /** one past the last pixel */
+    public final int end;
+
+    Segment(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    /** @return pixels */
+    public int length() {
+      return end - start;
+    }
+  }
+
+  /** pattern priority, later layers cover earlier ones */
+  public enum Layer {
+    /** game piece color for the human player */
+    COLOR,
+    /** what the robot is doing */
+    STATUS,
+    /** something the driver needs to see right away */
+    ALERT;
+  }
+
+  private static final Segment[] SEGMENTS = Segment.values();
+  private static final int LAYER_COUNT = Layer.values().length;
+
+  // converted from HSV once
+  public static final Color8Bit YELLOW = new Color8Bit(Color.fromHSV(YELLOW_H, YELLOW_S, YELLOW_V));
+  public static final Color8Bit PURPLE = new Color8Bit(Color.fromHSV(PURPLE_H, PURPLE_S, PURPLE_V));
+  public static final Color8Bit OFF = new Color8Bit(0, 0, 0);
+
+  /** what one segment shows, guarded by the buffer */
+  private static final class SegmentState {
+    final LEDPattern[] layers = new LEDPattern[LAYER_COUNT];
+
+    /** shown when no layer is set */
+    final LEDPattern off;
+
+    // last frame copied into the buffer
+    LEDPattern shown;
+    int shownFrame = -1;
+
+    SegmentState(Segment segment) {
+      off = LEDPattern.solid(OFF, segment.length());
+    }
+
+    /** highest priority pattern */
+    LEDPattern top() {
+      for (int i = LAYER_COUNT - 1; i >= 0; i--) {
+        if (layers[i] != null) {
+          return layers[i];
+        }
+      }
+      return off;
+    }
+  }
+
   private final AddressableLED LED;
   private final AddressableLEDBuffer LEDBuffer;
 
+  private final SegmentState[] states = new SegmentState[SEGMENTS.length];
+
+  /** solid colors for each segment, indexed by color then segment */
+  private final LEDPattern[][] colors = new LEDPattern[ColorType.values().length][SEGMENTS.length];
+
+  private final Notifier renderNotifier;
+
+  // render stats, written by the notifier
+  private volatile long framesPushed = 0;
+  private volatile double renderTime = 0;
+
   public AddressableLEDSubsystem() {
     LED = new AddressableLED(PWM_PORT);
     LEDBuffer = new AddressableLEDBuffer(LENGTH);
     LED.setLength(LEDBuffer.getLength());
     LED.setData(LEDBuffer);
     LED.start();
+
+    for (Segment segment : SEGMENTS) {
+      states[segment.ordinal()] = new SegmentState(segment);
+
+      for (ColorType colorType : ColorType.values()) {
+        colors[colorType.ordinal()][segment.ordinal()] = LEDPattern.solid(toColor(colorType), segment.length());
+      }
+    }
+
+    renderNotifier = new Notifier(this::render);
+    renderNotifier.setName("LED Render");
+    renderNotifier.startPeriodic(1.0 / RENDER_RATE);
   }
 
   /**
-   * This method sets all the LED groups (Human Player & Driver) to off
+   * change how often the strip is repainted
+   * @param rate hz
    */
-  public void LEDOff() {
-    //Sets each LED to off
-    for(int i = 0; i < LEDBuffer.getLength(); i++)
-    {
-      LEDBuffer.setHSV(i, 0, 0, 0);
-    }
-    LED.setData(LEDBuffer);
+  public void setRenderRate(double rate) {
+    renderNotifier.startPeriodic(1.0 / rate);
   }
 
   /**
-   * This method sets the Human Player LED group to the Yellow Color or Purple Color
+   * @return frames sent to the strip since startup
    */
-  public void driverColorMethod(ColorType colortype) {
-    //If the colortype requested is yellow, then it will set the Human Player group color to yellow
-    //If the colortype requested is purple, then it will set the Human Player group color to purple
-    if(ColorType.YELLOW == colortype)
-    {
-      //Sets each LED to Yellow
-      for(int i = 0; i < DRIVER_START_RANGE; i++)
-      {
-        LEDBuffer.setHSV(i, YELLOW_H, YELLOW_S, YELLOW_V);
+  public long getFramesPushed() {
+    return framesPushed;
+  }
+
+  /** copy changed frames and push them, runs on the render notifier */
+  private void render() {
+    long start = System.nanoTime();
+    double time = Timer.getFPGATimestamp();
+
+    synchronized (LEDBuffer) {
+      boolean changed = false;
+
+      for (Segment segment : SEGMENTS) {
+        SegmentState state = states[segment.ordinal()];
+        LEDPattern pattern = state.top();
+        int frame = pattern.frameAt(time);
+
+        if (pattern == state.shown && frame == state.shownFrame) {
+          continue;
+        }
+
+        pattern.copyFrame(frame, LEDBuffer, segment.start);
+        state.shown = pattern;
+        state.shownFrame = frame;
+        changed = true;
       }
-      LED.setData(LEDBuffer);
-    }
-    else if(ColorType.PURPLE == colortype)
-    {
-      //Sets each LED to Purple
-      for(int i = 0; i < DRIVER_START_RANGE; i++)
-      {
-        LEDBuffer.setHSV(i, PURPLE_H, PURPLE_S, PURPLE_V);
+
+      if (!changed) {
+        return;
       }
+
       LED.setData(LEDBuffer);
     }
+
+    framesPushed++;
+    renderTime = (System.nanoTime() - start) / 1000.0;
   }
 
   /**
-   * This method sets the Driver LED group to a specifed color
+   * show a pattern on a segment, covering lower layers
+   * @param pattern built for the segment's length
    */
-  public void humanColorMethod(ColorType colorType) {
-    if(ColorType.YELLOW == colorType)
-    {
-      //Sets each LED to Yellow
-      for(int i = DRIVER_START_RANGE; i < LEDBuffer.getLength(); i++)
-      {
-        LEDBuffer.setHSV(i, YELLOW_H, YELLOW_S, YELLOW_V);
-      }
-      LED.setData(LEDBuffer);
+  public void setPattern(Segment segment, Layer layer, LEDPattern pattern) {
+    if (pattern.getLength() != segment.length()) {
+      throw new IllegalArgumentException(
+        "Pattern is " + pattern.getLength() + " pixels, " + segment + " is " + segment.length()
+      );
     }
-    else if(ColorType.PURPLE == colorType)
-    {
-      //Sets each LED to Purple
-      for(int i = DRIVER_START_RANGE; i < LEDBuffer.getLength(); i++)
-      {
-        LEDBuffer.setHSV(i, PURPLE_H, PURPLE_S, PURPLE_V);
-      }
-      LED.setData(LEDBuffer);
+
+    synchronized (LEDBuffer) {
+      states[segment.ordinal()].layers[layer.ordinal()] = pattern;
     }
   }
 
+  /**
+   * remove a segment's pattern on one layer, whatever is under it shows again
+   */
+  public void clearPattern(Segment segment, Layer layer) {
+    synchronized (LEDBuffer) {
+      states[segment.ordinal()].layers[layer.ordinal()] = null;
+    }
+  }
+
+  /**
+   * Shows a pattern while the command runs. Doesn't require the subsystem, so patterns on
+   * different layers can run at the same time
+   * @param pattern built for the segment's length
+   */
+  public CommandBase showPattern(Segment segment, Layer layer, LEDPattern pattern) {
+    return Commands.startEnd(
+      () -> setPattern(segment, layer, pattern),
+      () -> clearPattern(segment, layer)
+    );
+  }
+
+  public static Color8Bit toColor(ColorType colorType) {
+    return colorType == ColorType.YELLOW ? YELLOW : PURPLE;
+  }
+
+  /**
+   * This method sets all the LED groups (Human Player & Driver) to off
+   */
+  public void LEDOff() {
+    clearPattern(Segment.DRIVER, Layer.COLOR);
+    clearPattern(Segment.HUMAN_PLAYER, Layer.COLOR);
+  }
+
+  /**
+   * This method sets the Human Player LED group to the Yellow Color or Purple Color
+   */
+  public void driverColorMethod(ColorType colortype) {
+    setPattern(Segment.DRIVER, Layer.COLOR, colors[colortype.ordinal()][Segment.DRIVER.ordinal()]);
+  }
+
+  /**
+   * This method sets the Driver LED group to a specifed color
+   */
+  public void humanColorMethod(ColorType colorType) {
+    setPattern(Segment.HUMAN_PLAYER, Layer.COLOR, colors[colorType.ordinal()][Segment.HUMAN_PLAYER.ordinal()]);
+  }
+
   public CommandBase HumanColor(ColorType colorType) {
     return runEnd(() -> humanColorMethod(colorType), this::LEDOff);   
   }
@@ -103,4 +256,11 @@ public class AddressableLEDSubsystem extends SubsystemBase {
   public void periodic() {
     // This method will be called once per scheduler run
   }
-}
\ No newline at end of file
+
+  @Override
+  public void initSendable(SendableBuilder builder) {
+    super.initSendable(builder);
+    builder.addIntegerProperty("Frames pushed", () -> framesPushed, null);
+    builder.addDoubleProperty("Render time (us)", () -> renderTime, null);
+  }
+}
@@ -10,6 +10,7 @@ import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkMax.ControlType;
 import com.revrobotics.CANSparkMax.IdleMode;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
 import com.revrobotics.REVPhysicsSim;
 import com.revrobotics.RelativeEncoder;
 import com.revrobotics.SparkMaxPIDController;
@@ -17,6 +18,8 @@ import com.revrobotics.SparkMaxPIDController;
 import edu.wpi.first.hal.SimDouble;
 import edu.wpi.first.hal.simulation.SimDeviceDataJNI;
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
@@ -24,12 +27,15 @@ import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.DifferentialDriveKinematics;
 import edu.wpi.first.math.kinematics.DifferentialDriveOdometry;
 import edu.wpi.first.math.kinematics.DifferentialDriveWheelSpeeds;
+import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N2;
 import edu.wpi.first.math.system.LinearSystem;
 import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.math.system.plant.LinearSystemId;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.util.sendable.SendableBuilder;
 import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.simulation.DifferentialDrivetrainSim;
@@ -40,8 +46,15 @@ import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.RunCommand;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Limelight.PoseMeasurement;
 import frc.robot.Robot;
+import frc.robot.characterization.CharacterizationLog;
 import frc.robot.commands.drive.DriveVelocity;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.StatusFrames;
+import frc.robot.util.StatusFrames.Role;
+import frc.robot.util.VisionFusion;
+import frc.robot.util.VisionPoseEstimator;
 
 import static frc.robot.Constants.DriveConstants.*;
 
@@ -80,14 +93,97 @@ public class DriveSystem extends SubsystemBase implements Testable {
   private final DifferentialDriveOdometry odometry;
 
   private final LinearSystem<N2, N2, N2> model;
+
+  /** radians / second and radians / second^2, from the drivetrain model */
+  private final TrapezoidProfile.Constraints turnConstraints;
+  /** simulated in the kinematic frame, see simulationPeriodic */
   private final DifferentialDrivetrainSim drivetrainSim;
 
   private final Field2d field;
 
+  /** navx yaw in the sim device, looked up once */
+  private final SimDouble simYaw;
+
+  /** FPGA time of the last drivetrain sim update - seconds */
+  private double lastSimTime;
+
+  /** pose from every limelight */
+  private final VisionFusion vision;
+
+  /** odometry fused with limelight poses */
+  private final VisionPoseEstimator poseEstimator;
+
+  /** last fused vision pose given to the pose estimator */
+  private PoseMeasurement lastVisionPose;
+
+  /** milliseconds from image capture until the last bot pose was used */
+  private double visionLatency = Double.NaN;
+
+  /** every drive sensor value, read once at the start of each loop */
+  private static class Inputs {
+    /** FPGA time the frame was captured - seconds */
+    double timestamp;
+
+    /** meters, from the drivetrain sim in simulation */
+    double leftPosition;
+    double rightPosition;
+
+    /** degrees counterclockwise positive, from the drivetrain sim in simulation */
+    double heading;
+
+    /** meters / second */
+    double leftVelocity;
+    double rightVelocity;
+
+    /** degrees */
+    double gyroAngle;
+    double gyroRoll;
+
+    /** -1.0 through 1.0 */
+    double leftAppliedOutput;
+    double rightAppliedOutput;
+  }
+
+  private final Inputs inputs = new Inputs();
+
+  /** immutable odometry result, swapped in whole so readers never need a lock */
+  public static final class OdometrySnapshot {
+    /** robot pose from odometry */
+    public final Pose2d pose;
+
+    /** FPGA time the sensors were sampled - seconds */
+    public final double timestamp;
+
+    public OdometrySnapshot(Pose2d pose, double timestamp) {
+      this.pose = pose;
+      this.timestamp = timestamp;
+    }
+  }
+
+  /** latest odometry, written by whichever thread samples the sensors */
+  private volatile OdometrySnapshot odometrySnapshot;
+
+  /** samples odometry at ODOMETRY_PERIOD when high rate odometry is enabled */
+  private final Notifier odometryNotifier;
+
+  /** whether the notifier samples odometry instead of periodic(), starts at HIGH_RATE_ODOMETRY */
+  private volatile boolean highRateOdometry = false;
+
+  /** records characterization runs off the main loop */
+  private final CharacterizationLog characterizationLog;
+
   private Mode currentMode = Mode.NORMAL;
 
+  // loop profiler timing for periodic methods
+  private final LoopProfiler.Phase periodicPhase = LoopProfiler.getInstance().phase("DriveSystem.periodic");
+  private final LoopProfiler.Phase simulationPhase = LoopProfiler.getInstance().phase("DriveSystem.simulationPeriodic");
+  private final LoopProfiler profiler = LoopProfiler.getInstance();
+
   /** Creates a new DriveSystem. */
-  public DriveSystem() {
+  public DriveSystem(VisionFusion vision) {
+    this.vision = vision;
+    poseEstimator = new VisionPoseEstimator();
+
     // motors
     frontLeft = new CANSparkMax(FRONT_LEFT_MOTOR, MotorType.kBrushless);
     frontRight = new CANSparkMax(FRONT_RIGHT_MOTOR, MotorType.kBrushless);
@@ -103,13 +199,13 @@ public class DriveSystem extends SubsystemBase implements Testable {
     leftController = frontLeft.getPIDController();
     rightController = frontRight.getPIDController();
 
-    leftController.setP(0.001);
-    leftController.setD(0.001);
-    leftController.setFF(0.15);
+    leftController.setP(VELOCITY_P);
+    leftController.setD(VELOCITY_D);
+    leftController.setFF(VELOCITY_FF);
 
-    rightController.setP(0.001);
-    rightController.setD(0.001);
-    rightController.setFF(0.15);
+    rightController.setP(VELOCITY_P);
+    rightController.setD(VELOCITY_D);
+    rightController.setFF(VELOCITY_FF);
 
     // encoders
     leftEncoder = frontLeft.getEncoder();
@@ -137,6 +233,12 @@ public class DriveSystem extends SubsystemBase implements Testable {
     frontRight.setSmartCurrentLimit(60);
     backLeft.setSmartCurrentLimit(60);
 
+    // followers copy the leader's applied output, nothing reads their own frames
+    StatusFrames.register(frontLeft, Role.LEADER);
+    StatusFrames.register(frontRight, Role.LEADER);
+    StatusFrames.register(backLeft, Role.FOLLOWER);
+    StatusFrames.register(backRight, Role.FOLLOWER);
+
     // gyro 
     gyro = new AHRS();
 
@@ -154,14 +256,28 @@ public class DriveSystem extends SubsystemBase implements Testable {
       WHEEL_RADIUS, 
       TRACK_WIDTH / 2, 
       MOMENT_OF_INERTIA, 
-      1 / GEAR_RATIO
+      GEAR_RATIO // reduction, motor turns per wheel turn
+    );
+
+    // fastest turn the model allows: cruise at TURN_CRUISE_VOLTAGE and accelerate with the
+    // voltage left over at that speed, so the profile is reachable the whole way
+    double accelerationVoltage = NOMINAL_VOLTAGE - TURN_CRUISE_VOLTAGE;
+    Matrix<N2, N1> cruise = model.getA()
+      .solve(model.getB().times(VecBuilder.fill(-TURN_CRUISE_VOLTAGE, TURN_CRUISE_VOLTAGE)))
+      .times(-1);
+    Matrix<N2, N1> acceleration = model.getB()
+      .times(VecBuilder.fill(-accelerationVoltage, accelerationVoltage));
+
+    turnConstraints = new TrapezoidProfile.Constraints(
+      Math.abs(cruise.get(1, 0) - cruise.get(0, 0)) / TRACK_WIDTH,
+      Math.abs(acceleration.get(1, 0) - acceleration.get(0, 0)) / TRACK_WIDTH
     );
 
     // drivetrain simulation
     drivetrainSim = new DifferentialDrivetrainSim(
       model, // drivetrain state-space model
       DCMotor.getNEO(4),
-      1 / GEAR_RATIO,
+      GEAR_RATIO,
       TRACK_WIDTH,
       WHEEL_RADIUS,
       null
@@ -178,7 +294,14 @@ public class DriveSystem extends SubsystemBase implements Testable {
       REVPhysicsSim.getInstance().addSparkMax(frontRight, DCMotor.getNEO(1));
       REVPhysicsSim.getInstance().addSparkMax(backLeft, DCMotor.getNEO(1));
       REVPhysicsSim.getInstance().addSparkMax(backRight, DCMotor.getNEO(1));
+
+      // sim navx tracks the drivetrain sim rotation
+      int device = SimDeviceDataJNI.getSimDeviceHandle("navX-Sensor[0]");
+      simYaw = new SimDouble(SimDeviceDataJNI.getSimValueHandle(device, "Yaw"));
+    } else {
+      simYaw = null;
     }
+    lastSimTime = Timer.getFPGATimestamp();
 
     // odometry instantiated differently in sim or real robot
     if (Robot.isReal()) {
@@ -190,10 +313,25 @@ public class DriveSystem extends SubsystemBase implements Testable {
     } else {
       odometry = new DifferentialDriveOdometry(
         drivetrainSim.getHeading(), 
-        drivetrainSim.getLeftPositionMeters(), 
-        drivetrainSim.getRightPositionMeters()
+        drivetrainSim.getRightPositionMeters(), 
+        drivetrainSim.getLeftPositionMeters()
       );
     }
+    odometrySnapshot = new OdometrySnapshot(odometry.getPoseMeters(), Timer.getFPGATimestamp());
+    poseEstimator.addOdometry(odometrySnapshot.timestamp, odometrySnapshot.pose);
+
+    // high rate odometry owns the odometry object on its own thread
+    odometryNotifier = new Notifier(this::sampleOdometry);
+    odometryNotifier.setName("Odometry");
+
+    setHighRateOdometry(HIGH_RATE_ODOMETRY);
+
+    // samples at the rate the feedback frames are sent while characterizing
+    characterizationLog = new CharacterizationLog(
+      this::sampleCharacterization, 
+      CHARACTERIZATION_MAX_SAMPLES, 
+      CHARACTERIZATION_FRAME_PERIOD / 1000.0
+    );
   }
 
   /** Changes the speed multiplier between the normal mode to slow mode */
@@ -270,11 +408,112 @@ public class DriveSystem extends SubsystemBase implements Testable {
 
   /**
    * Set the speeds of the drivetrain in m/s using motor PID controllers
-   * @param speeds m/s
+   * @param speeds m/s, kinematic left and right, same as {@link #inverseKinematics(ChassisSpeeds)}
    */
   public void setVelocity(DifferentialDriveWheelSpeeds speeds) {
-    leftController.setReference(speeds.leftMetersPerSecond, ControlType.kVelocity);
-    rightController.setReference(speeds.rightMetersPerSecond, ControlType.kVelocity);
+    // positive output drives the robot backwards, so kinematic forward is the back of the robot
+    // and the kinematic left side is the right motors
+    leftController.setReference(speeds.rightMetersPerSecond, ControlType.kVelocity);
+    rightController.setReference(speeds.leftMetersPerSecond, ControlType.kVelocity);
+  }
+
+  /**
+   * drive each side with a fixed voltage, no feedback
+   * @param leftVoltage volts
+   * @param rightVoltage volts
+   */
+  public void setVoltage(double leftVoltage, double rightVoltage) {
+    leftController.setReference(leftVoltage, ControlType.kVoltage);
+    rightController.setReference(rightVoltage, ControlType.kVoltage);
+  }
+
+  /**
+   * how often the leaders send velocity and position, put back with {@link #restoreFeedbackPeriod()}
+   * @param period milliseconds
+   */
+  public void setFeedbackPeriod(int period) {
+    frontLeft.setPeriodicFramePeriod(PeriodicFrame.kStatus1, period);
+    frontLeft.setPeriodicFramePeriod(PeriodicFrame.kStatus2, period);
+    frontRight.setPeriodicFramePeriod(PeriodicFrame.kStatus1, period);
+    frontRight.setPeriodicFramePeriod(PeriodicFrame.kStatus2, period);
+  }
+
+  /**
+   * put the leaders' velocity frames back to {@link Role#LEADER} and their position frames back
+   * to what the current odometry mode reads
+   */
+  public void restoreFeedbackPeriod() {
+    frontLeft.setPeriodicFramePeriod(PeriodicFrame.kStatus1, Role.LEADER.status1);
+    frontRight.setPeriodicFramePeriod(PeriodicFrame.kStatus1, Role.LEADER.status1);
+    frontLeft.setPeriodicFramePeriod(PeriodicFrame.kStatus2, positionFramePeriod());
+    frontRight.setPeriodicFramePeriod(PeriodicFrame.kStatus2, positionFramePeriod());
+  }
+
+  /**
+   * @return milliseconds between leader position frames, as often as odometry reads them
+   */
+  private int positionFramePeriod() {
+    return highRateOdometry ? (int) Math.round(ODOMETRY_PERIOD * 1000) : 20;
+  }
+
+  /**
+   * switch between sampling odometry on its own notifier at ODOMETRY_PERIOD and once per loop in
+   * periodic(). the leaders' position frames are sped up or slowed down to match
+   * @param enabled sample on the notifier
+   */
+  public void setHighRateOdometry(boolean enabled) {
+    highRateOdometry = enabled;
+
+    frontLeft.setPeriodicFramePeriod(PeriodicFrame.kStatus2, positionFramePeriod());
+    frontRight.setPeriodicFramePeriod(PeriodicFrame.kStatus2, positionFramePeriod());
+
+    if (enabled) {
+      odometryNotifier.startPeriodic(ODOMETRY_PERIOD);
+    } else {
+      odometryNotifier.stop();
+    }
+  }
+
+  /**
+   * @return whether odometry is sampled on its own notifier
+   */
+  public boolean isHighRateOdometry() {
+    return highRateOdometry;
+  }
+
+  /**
+   * @return recorder for characterization runs
+   */
+  public CharacterizationLog getCharacterizationLog() {
+    return characterizationLog;
+  }
+
+  /**
+   * read one characterization sample straight from the hardware, runs on the capture notifier
+   * @param buffer {@link CharacterizationLog#FIELDS} floats are written starting at offset
+   * @param offset first index to write
+   * @param time seconds since the run started
+   */
+  private void sampleCharacterization(float[] buffer, int offset, double time) {
+    double voltage = RobotController.getInputVoltage();
+
+    buffer[offset] = (float) time;
+    buffer[offset + 1] = (float) (frontLeft.getAppliedOutput() * voltage);
+    buffer[offset + 2] = (float) (frontRight.getAppliedOutput() * voltage);
+
+    if (Robot.isReal()) {
+      buffer[offset + 3] = (float) leftEncoder.getPosition();
+      buffer[offset + 4] = (float) rightEncoder.getPosition();
+      buffer[offset + 5] = (float) leftEncoder.getVelocity();
+      buffer[offset + 6] = (float) rightEncoder.getVelocity();
+    } else {
+      synchronized (drivetrainSim) {
+        buffer[offset + 3] = (float) drivetrainSim.getRightPositionMeters();
+        buffer[offset + 4] = (float) drivetrainSim.getLeftPositionMeters();
+        buffer[offset + 5] = (float) drivetrainSim.getRightVelocityMetersPerSecond();
+        buffer[offset + 6] = (float) drivetrainSim.getLeftVelocityMetersPerSecond();
+      }
+    }
   }
 
   /** stop all drive motors */
@@ -290,7 +529,7 @@ public class DriveSystem extends SubsystemBase implements Testable {
    * @return
    */
   public Rotation2d getGyroAngle() {
-    return odometry.getPoseMeters().getRotation();
+    return odometrySnapshot.pose.getRotation();
   }
 
   /**
@@ -298,7 +537,160 @@ public class DriveSystem extends SubsystemBase implements Testable {
    * @return relative position, start is (0, 0)
    */
   public Pose2d getOdometryPosition() {
-    return odometry.getPoseMeters();
+    return odometrySnapshot.pose;
+  }
+
+  /**
+   * robot pose on the field, odometry corrected with limelight measurements. it jumps when a
+   * measurement is accepted, so only use it for field-relative goals and measure relative moves
+   * with {@link #getOdometryPosition()}
+   * @return field position, same as odometry until the limelight sees a tag
+   */
+  public Pose2d getEstimatedPosition() {
+    return poseEstimator.getEstimatedPosition();
+  }
+
+  /**
+   * odometry heading when a past measurement was taken, e.g. a camera frame
+   * @param timestamp FPGA time - seconds
+   * @return radians counterclockwise positive, NaN if older than the pose history
+   */
+  public double getHeadingAt(double timestamp) {
+    return poseEstimator.getOdometryHeadingAt(timestamp);
+  }
+
+  /**
+   * latest odometry result with the time it was sampled, safe to read from any thread
+   * @return snapshot of the most recent odometry update
+   */
+  public OdometrySnapshot getOdometrySnapshot() {
+    return odometrySnapshot;
+  }
+
+  /**
+   * reads every sensor the drive system uses exactly once, commands and sendables
+   * read the frame instead of the hardware
+   */
+  private void captureInputs() {
+    inputs.timestamp = Timer.getFPGATimestamp();
+    profiler.countHardwareRead();
+
+    if (Robot.isReal()) {
+      inputs.leftPosition = leftEncoder.getPosition();
+      profiler.countHardwareRead();
+      inputs.rightPosition = rightEncoder.getPosition();
+      profiler.countHardwareRead();
+    } else {
+      // odometry follows the drivetrain sim, which is plain java
+      synchronized (drivetrainSim) {
+        inputs.leftPosition = drivetrainSim.getRightPositionMeters();
+        inputs.rightPosition = drivetrainSim.getLeftPositionMeters();
+        inputs.heading = drivetrainSim.getHeading().getDegrees();
+      }
+    }
+
+    inputs.leftVelocity = leftEncoder.getVelocity();
+    profiler.countHardwareRead();
+    inputs.rightVelocity = rightEncoder.getVelocity();
+    profiler.countHardwareRead();
+
+    // not counted, the navx getters read values its own thread already received
+    inputs.gyroAngle = gyro.getAngle();
+    inputs.gyroRoll = gyro.getRoll();
+
+    inputs.leftAppliedOutput = frontLeft.getAppliedOutput();
+    profiler.countHardwareRead();
+    inputs.rightAppliedOutput = frontRight.getAppliedOutput();
+    profiler.countHardwareRead();
+
+    if (Robot.isReal()) {
+      inputs.heading = -inputs.gyroAngle;
+    }
+  }
+
+  /**
+   * runs on the odometry notifier, reads the sensors directly since the
+   * input frame belongs to the main loop
+   */
+  private void sampleOdometry() {
+    double timestamp = Timer.getFPGATimestamp();
+
+    if (Robot.isReal()) {
+      updateOdometry(timestamp, -gyro.getAngle(), leftEncoder.getPosition(), rightEncoder.getPosition());
+    } else {
+      double heading, left, right;
+
+      // drivetrain sim is stepped on the main thread
+      synchronized (drivetrainSim) {
+        heading = drivetrainSim.getHeading().getDegrees();
+        left = drivetrainSim.getRightPositionMeters();
+        right = drivetrainSim.getLeftPositionMeters();
+      }
+
+      updateOdometry(timestamp, heading, left, right);
+    }
+  }
+
+  /**
+   * updates odometry and publishes a new snapshot.
+   * called from periodic() or the odometry notifier, the lock covers switching between them
+   * @param timestamp FPGA time the sensors were read - seconds
+   * @param heading degrees counterclockwise positive
+   * @param leftPosition meters
+   * @param rightPosition meters
+   */
+  private void updateOdometry(double timestamp, double heading, double leftPosition, double rightPosition) {
+    // only contended when the pose is reset
+    synchronized (odometry) {
+      odometry.update(Rotation2d.fromDegrees(heading), leftPosition, rightPosition);
+
+      odometrySnapshot = new OdometrySnapshot(odometry.getPoseMeters(), timestamp);
+      poseEstimator.addOdometry(timestamp, odometrySnapshot.pose);
+    }
+  }
+
+  /**
+   * move odometry and the pose estimate to a known pose, in simulation the drivetrain sim is moved too
+   * @param pose field pose the robot is at
+   */
+  public void resetPose(Pose2d pose) {
+    synchronized (odometry) {
+      if (Robot.isReal()) {
+        odometry.resetPosition(
+          Rotation2d.fromDegrees(-gyro.getAngle()), 
+          leftEncoder.getPosition(), 
+          rightEncoder.getPosition(), 
+          pose
+        );
+      } else {
+        synchronized (drivetrainSim) {
+          drivetrainSim.setPose(pose);
+          odometry.resetPosition(
+            drivetrainSim.getHeading(), 
+            drivetrainSim.getRightPositionMeters(), 
+            drivetrainSim.getLeftPositionMeters(), 
+            pose
+          );
+        }
+      }
+
+      double timestamp = Timer.getFPGATimestamp();
+      odometrySnapshot = new OdometrySnapshot(pose, timestamp);
+
+      // old history is in the previous odometry frame
+      poseEstimator.clearHistory();
+      poseEstimator.addOdometry(timestamp, pose);
+      poseEstimator.resetPose(pose);
+    }
+  }
+
+  /**
+   * @return ground truth pose of the drivetrain simulation
+   */
+  public Pose2d getSimulatedPose() {
+    synchronized (drivetrainSim) {
+      return drivetrainSim.getPose();
+    }
   }
 
   /**
@@ -310,6 +702,14 @@ public class DriveSystem extends SubsystemBase implements Testable {
     return kinematics.toWheelSpeeds(speeds);
   }
 
+  /**
+   * fastest turn the drivetrain model allows
+   * @return angular velocity and acceleration limits
+   */
+  public TrapezoidProfile.Constraints getTurnConstraints() {
+    return turnConstraints;
+  }
+
   /**
    * automatically balance on the charge station
    */
@@ -327,7 +727,7 @@ public class DriveSystem extends SubsystemBase implements Testable {
         double maxAngle = 20;
 
         // Negative because of robot orientation
-        double angle = -MathUtil.clamp(gyro.getRoll(), -maxAngle, maxAngle); 
+        double angle = -MathUtil.clamp(inputs.gyroRoll, -maxAngle, maxAngle); 
 
         // Speed is proportional to the angle 
         //double speed = MathUtil.clamp((angle / maxAngle) * proportional, -maxPercentOutput, maxPercentOutput); 
@@ -373,51 +773,97 @@ public class DriveSystem extends SubsystemBase implements Testable {
 
   @Override
   public void periodic() {
-    // odometry and pose visualization update different in simulation and real
-    if (Robot.isReal()) {
-      // update from real encoder and gyro values
-      odometry.update(
-        Rotation2d.fromDegrees(-gyro.getAngle()), 
-        leftEncoder.getPosition(), 
-        rightEncoder.getPosition()
-      );
+    periodicPhase.start();
 
-      // update field visualization from odometry in real robot
-      field.setRobotPose(odometry.getPoseMeters());
-    } else {
-      // update from drivetrain sim
-      odometry.update(
-        drivetrainSim.getHeading(), 
-        drivetrainSim.getLeftPositionMeters(), 
-        drivetrainSim.getRightPositionMeters()
-      );
+    // read all sensors once for this loop
+    captureInputs();
 
-      // update field visualization from drivetrain sim in simulation
-      field.setRobotPose(drivetrainSim.getPose());
+    // odometry notifier updates on its own when high rate odometry is enabled
+    if (!highRateOdometry) {
+      updateOdometry(inputs.timestamp, inputs.heading, inputs.leftPosition, inputs.rightPosition);
+    }
+
+    // apply each new vision pose once, at the time the images were captured
+    PoseMeasurement visionPose = vision.getFusedPose();
+    if (visionPose != lastVisionPose) {
+      lastVisionPose = visionPose;
+
+      if (visionPose.hasPose()) {
+        poseEstimator.addVisionMeasurement(visionPose.x, visionPose.y, visionPose.yaw, visionPose.captureTime);
+
+        // image capture to the pose estimate
+        visionLatency = (inputs.timestamp - visionPose.captureTime) * 1000;
+      }
+    }
+
+    // field visualization shows the fused pose
+    field.setRobotPose(poseEstimator.getEstimatedPosition());
+
+    if (Robot.isSimulation()) {
+      // show drivetrain sim ground truth next to the estimate
+      synchronized (drivetrainSim) {
+        field.getObject("Simulation").setPose(drivetrainSim.getPose());
+      }
     } 
+
+    periodicPhase.stop();
   }
   
   @Override
   public void simulationPeriodic() {
+    simulationPhase.start();
+
     // run rev lib physics sim
     REVPhysicsSim.getInstance().run();
 
-    // set sim navx to track data from drivetrain rotation
-    int device = SimDeviceDataJNI.getSimDeviceHandle("navX-Sensor[0]");
-    SimDouble angle = new SimDouble(SimDeviceDataJNI.getSimValueHandle(device, "Yaw"));
+    updateSimulation();
 
-    // navx is counterclockwise positive
-    double currentAngle = drivetrainSim.getHeading().getDegrees();
-    angle.set(Math.IEEEremainder(-currentAngle, 360)); 
+    simulationPhase.stop();
+  }
 
-    // set inputs to drivesystem simulation
-    drivetrainSim.setInputs(
-      frontLeft.getAppliedOutput() * RobotController.getInputVoltage(), 
-      frontRight.getAppliedOutput() * RobotController.getInputVoltage()
-    );
+  /**
+   * advance the drivetrain sim to the current time with the motors' applied output, does nothing
+   * on the robot. runs every loop from simulationPeriodic, tests call it between loops too so the
+   * odometry notifier has new positions to read
+   */
+  public void updateSimulation() {
+    if (!Robot.isSimulation()) {
+      return;
+    }
+
+    // integrate over the time that actually passed, loops can run late
+    double now = Timer.getFPGATimestamp();
+    double dt = Math.min(now - lastSimTime, SIM_MAX_DT);
+    lastSimTime = now;
+
+    // inputs are held until the next update
+    double voltage = RobotController.getInputVoltage();
+    double leftVoltage = frontLeft.getAppliedOutput() * voltage;
+    double rightVoltage = frontRight.getAppliedOutput() * voltage;
+
+    // split into fixed size physics steps
+    int substeps = Math.max(1, (int) Math.ceil(dt / SIM_SUBSTEP));
+    double substep = dt / substeps;
+
+    double currentAngle;
+
+    // odometry notifier may be reading the sim
+    synchronized (drivetrainSim) {
+      // set inputs to drivesystem simulation. the sim is in the kinematic frame, forward is the
+      // back of the robot, so its left side is the right motors (see setVelocity)
+      drivetrainSim.setInputs(rightVoltage, leftVoltage);
+
+      if (dt > 0) {
+        for (int i = 0; i < substeps; i++) {
+          drivetrainSim.update(substep);
+        }
+      }
+
+      currentAngle = drivetrainSim.getHeading().getDegrees();
+    }
 
-    // drivetrain simulation update with timestamp
-    drivetrainSim.update(0.02);
+    // navx is clockwise positive
+    simYaw.set(Math.IEEEremainder(-currentAngle, 360)); 
   }
 
   @Override
@@ -425,30 +871,54 @@ public class DriveSystem extends SubsystemBase implements Testable {
     builder.setSmartDashboardType("Drive");
 
     // used for autobalance
-    builder.addDoubleProperty("Roll (deg)", gyro::getRoll, null);
+    builder.addDoubleProperty("Roll (deg)", () -> inputs.gyroRoll, null);
 
     // motor velocities
-    builder.addDoubleProperty("Left velocity", leftEncoder::getVelocity, null);
-    builder.addDoubleProperty("Right velocity", rightEncoder::getVelocity, null);
+    builder.addDoubleProperty("Left velocity", () -> inputs.leftVelocity, null);
+    builder.addDoubleProperty("Right velocity", () -> inputs.rightVelocity, null);
 
     if (Robot.isSimulation()) {
-      builder.addDoubleProperty("Simulation left velocity", drivetrainSim::getLeftVelocityMetersPerSecond, null);
-      builder.addDoubleProperty("Simulation right velocity", drivetrainSim::getRightVelocityMetersPerSecond, null);
+      builder.addDoubleProperty("Simulation left velocity", drivetrainSim::getRightVelocityMetersPerSecond, null);
+      builder.addDoubleProperty("Simulation right velocity", drivetrainSim::getLeftVelocityMetersPerSecond, null);
     }
 
     // drivetrain velocity + direction
-    builder.addDoubleProperty("Gyro angle", gyro::getAngle, null);
+    builder.addDoubleProperty("Gyro angle", () -> inputs.gyroAngle, null);
 
     // odometry positions
-    builder.addDoubleProperty("Odometry X position (m)", () -> odometry.getPoseMeters().getX(), null);
-    builder.addDoubleProperty("Odometry Y position (m)", () -> odometry.getPoseMeters().getY(), null);
-    builder.addDoubleProperty("Odometry angle (deg)", () -> odometry.getPoseMeters().getRotation().getDegrees(), null);
-    builder.addDoubleProperty("Odometry angle (rad)", () -> odometry.getPoseMeters().getRotation().getRadians(), null);
+    builder.addDoubleProperty("Odometry X position (m)", () -> odometrySnapshot.pose.getX(), null);
+    builder.addDoubleProperty("Odometry Y position (m)", () -> odometrySnapshot.pose.getY(), null);
+    builder.addDoubleProperty("Odometry angle (deg)", () -> odometrySnapshot.pose.getRotation().getDegrees(), null);
+    builder.addDoubleProperty("Odometry angle (rad)", () -> odometrySnapshot.pose.getRotation().getRadians(), null);
+
+    // fused positions
+    builder.addDoubleProperty("Estimated X position (m)", () -> poseEstimator.getEstimatedPosition().getX(), null);
+    builder.addDoubleProperty("Estimated Y position (m)", () -> poseEstimator.getEstimatedPosition().getY(), null);
+    builder.addDoubleProperty("Vision measurements accepted", poseEstimator::getAcceptedCount, null);
+    builder.addDoubleProperty("Vision measurements rejected", poseEstimator::getRejectedCount, null);
+    builder.addDoubleProperty("Vision latency (ms)", () -> visionLatency, null);
+
+    builder.addDoubleProperty("Characterization samples", characterizationLog::getSampleCount, null);
+    builder.addBooleanProperty("High rate odometry", this::isHighRateOdometry, this::setHighRateOdometry);
+
+    if (Robot.isSimulation()) {
+      // compare 50 Hz and high rate odometry against the simulated ground truth
+      builder.addDoubleProperty("Odometry error vs sim (m)", () -> {
+        synchronized (drivetrainSim) {
+          return odometrySnapshot.pose.getTranslation().getDistance(drivetrainSim.getPose().getTranslation());
+        }
+      }, null);
+      builder.addDoubleProperty("Odometry heading error vs sim (deg)", () -> {
+        synchronized (drivetrainSim) {
+          return odometrySnapshot.pose.getRotation().minus(drivetrainSim.getHeading()).getDegrees();
+        }
+      }, null);
+    }
 
     if (Robot.isSimulation()) {
       builder.addDoubleProperty("Voltage", RobotController::getInputVoltage, null);
-      builder.addDoubleProperty("Left output", () -> frontLeft.getAppliedOutput(), null);
-      builder.addDoubleProperty("Right output", () -> frontRight.getAppliedOutput(), null);
+      builder.addDoubleProperty("Left output", () -> inputs.leftAppliedOutput, null);
+      builder.addDoubleProperty("Right output", () -> inputs.rightAppliedOutput, null);
     }
   }
 
@@ -7,8 +7,12 @@ package frc.robot.subsystems;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
 import com.revrobotics.CANSparkMax;
 import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.FunctionalCommand;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
 import frc.robot.Constants.GripperConstants;
 import frc.robot.Constants.LimelightConstants;
 import frc.robot.subsystems.AddressableLEDSubsystem.ColorType;
@@ -16,6 +20,11 @@ import frc.robot.subsystems.AddressableLEDSubsystem.ColorType;
 import static frc.robot.Constants.GripperConstants.*;
 
 import frc.robot.Limelight;
+import frc.robot.util.GamePieceDetector;
+import frc.robot.util.GamePieceDetector.GamePiece;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.StatusFrames;
+import frc.robot.util.StatusFrames.Role;
 
 public class GripperSystem extends SubsystemBase {
 
@@ -26,6 +35,19 @@ public class GripperSystem extends SubsystemBase {
   private Limelight limelight;
   private boolean isHolding;
 
+  /** roller current - amps, latest sample from the detection notifier, only updated while intaking */
+  private volatile double rollerCurrent;
+  private volatile double filteredCurrent;
+
+  /** guarded by itself, fed by the detection notifier */
+  private final GamePieceDetector detector = new GamePieceDetector();
+  private volatile boolean hasGamePiece = false;
+
+  /** only runs while intaking, nothing reads the current otherwise */
+  private final Notifier detectionNotifier;
+
+  private final LoopProfiler profiler = LoopProfiler.getInstance();
+
   /** Creates a new GripperSystem. */
   public GripperSystem(Limelight limelight) {
     //colorSensor = new ColorSensorV3(GripperConstants.I2C_PORT);
@@ -35,6 +57,12 @@ public class GripperSystem extends SubsystemBase {
     rollerMotor.setInverted(true);
     isHolding = true;
 
+    // current arrives in status frame 1, sample it as often as it's sent
+    StatusFrames.register(rollerMotor, Role.CURRENT_SENSING);
+
+    detectionNotifier = new Notifier(this::sampleCurrent);
+    detectionNotifier.setName("Game Piece Detection");
+
   }
 
   public void spin(double speed) {
@@ -42,71 +70,102 @@ public class GripperSystem extends SubsystemBase {
   }
 
   /**
-   * Spins the gripper roller to intake
-   * sets speed to 0 to stop
-   **/
-  public CommandBase coneIntake(AddressableLEDSubsystem aLedSubsystem){
-    return runEnd(
-      // run
-      () -> {
-        if (rollerMotor.getOutputCurrent() < DEFAULT_DRAW)
-        {
-          spin(ROLLER_SPEED);
-        }
-        else
-        {
-          spin(0);
-        }
-      },
+   * whether the intake has stalled on a game piece, safe to call from any thread
+   * @return true until the piece is outtaken
+   */
+  public boolean hasGamePiece() {
+    return hasGamePiece;
+  }
 
-      // end
-      () -> {
-        spin(0);
-        isHolding = true;
-        
-    });
+  /**
+   * @return trigger for commands that should run once a game piece is in
+   */
+  public Trigger gamePieceDetected() {
+    return new Trigger(this::hasGamePiece);
   }
 
-  public CommandBase coneIntake() {
-    return runEnd(
-      // run
+  /**
+   * runs at the status frame rate, the roller is stopped here as soon as a piece is
+   * detected instead of waiting for the next loop
+   */
+  private void sampleCurrent() {
+    double current = rollerMotor.getOutputCurrent();
+    profiler.countHardwareRead();
+    rollerCurrent = current;
+
+    double timestamp = Timer.getFPGATimestamp();
+    profiler.countHardwareRead();
+
+    synchronized (detector) {
+      boolean had = detector.hasGamePiece();
+      detector.update(current, timestamp);
+      filteredCurrent = detector.getFilteredCurrent();
+
+      if (detector.hasGamePiece() && !had) {
+        rollerMotor.set(0);
+        hasGamePiece = true;
+      }
+    }
+  }
+
+  /**
+   * spins the roller in until the current says a game piece is in
+   * @param gamePiece which current signature to look for
+   */
+  private CommandBase intake(GamePiece gamePiece) {
+    return new FunctionalCommand(
+      // init
       () -> {
-        if (rollerMotor.getOutputCurrent() < MAX_CUBE_DRAW)
-        {
-          spin(ROLLER_SPEED);
-        }
-        else
-        {
-          spin(0);
+        synchronized (detector) {
+          detector.start(gamePiece, Timer.getFPGATimestamp());
+          hasGamePiece = false;
         }
+        detectionNotifier.startPeriodic(ROLLER_STATUS_PERIOD / 1000.0);
       },
 
-      // end
-      () -> {
-        spin(0);
-        isHolding = true;
-      });
-  }
-
-  public CommandBase cubeIntake(AddressableLEDSubsystem aLedSubsystem){
-    return runEnd(
       // run
       () -> {
-        if (rollerMotor.getOutputCurrent() < MAX_CUBE_DRAW)
+        if (hasGamePiece)
         {
-          spin(ROLLER_SPEED);
+          spin(0);
         }
         else
         {
-          spin(0);
+          spin(ROLLER_SPEED);
         }
       },
 
       // end
-      () -> {
+      interrupted -> {
+        detectionNotifier.stop();
+        synchronized (detector) {
+          detector.stop(Timer.getFPGATimestamp());
+        }
         spin(0);
         isHolding = true;
-      });
+      },
+
+      // runs until the button is released
+      () -> false,
+
+      this
+    );
+  }
+
+  /**
+   * Spins the gripper roller to intake
+   * sets speed to 0 to stop
+   **/
+  public CommandBase coneIntake(AddressableLEDSubsystem aLedSubsystem){
+    return intake(GamePiece.CONE);
+  }
+
+  public CommandBase coneIntake() {
+    return intake(GamePiece.CONE);
+  }
+
+  public CommandBase cubeIntake(AddressableLEDSubsystem aLedSubsystem){
+    return intake(GamePiece.CUBE);
   }
 
   public CommandBase hold() {
@@ -141,6 +200,12 @@ public class GripperSystem extends SubsystemBase {
         () -> {
           spin(0);
           isHolding = false;
+
+          // the game piece is gone
+          synchronized (detector) {
+            detector.clear(Timer.getFPGATimestamp());
+            hasGamePiece = false;
+          }
         });
   }
 
@@ -148,7 +213,14 @@ public class GripperSystem extends SubsystemBase {
   public void initSendable(SendableBuilder builder) {
 
     builder.setSmartDashboardType("GripperSystem");
-    builder.addDoubleProperty("Current Draw Readings", () -> rollerMotor.getOutputCurrent(), null);
+    builder.addDoubleProperty("Current Draw Readings", () -> rollerCurrent, null);
+    builder.addDoubleProperty("Filtered Current", () -> filteredCurrent, null);
+    builder.addBooleanProperty("Has Game Piece", this::hasGamePiece, null);
+    builder.addStringProperty("Detection State", () -> {
+      synchronized (detector) {
+        return detector.getState().toString();
+      }
+    }, null);
 
   }
 
@@ -6,30 +6,65 @@ package frc.robot.subsystems;
 
 import com.revrobotics.AbsoluteEncoder;
 import com.revrobotics.CANSparkMax;
+import com.revrobotics.REVPhysicsSim;
 import com.revrobotics.RelativeEncoder;
 import com.revrobotics.SparkMaxAbsoluteEncoder;
 import com.revrobotics.SparkMaxPIDController;
+import com.revrobotics.SparkMaxPIDController.ArbFFUnits;
 import com.revrobotics.CANSparkMax.ControlType;
 import com.revrobotics.CANSparkMax.IdleMode;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
 import com.revrobotics.SparkMaxAbsoluteEncoder.Type;
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
 import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.DutyCycleEncoder;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj.motorcontrol.MotorControllerGroup;
+import edu.wpi.first.wpilibj.simulation.DIOSim;
+import edu.wpi.first.wpilibj.simulation.DutyCycleEncoderSim;
+import edu.wpi.first.wpilibj.simulation.SingleJointedArmSim;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.FunctionalCommand;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Robot;
 import frc.robot.Constants.LiftConstants;
+import frc.robot.util.ArmController;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.StatusFrames;
+import frc.robot.util.StatusFrames.Role;
 
 import static frc.robot.Constants.LiftConstants.*;
 
 import java.util.List;
 
 public class LiftSystem extends SubsystemBase implements Testable {
+  /** how liftArmsToPosition moves the arm */
+  public enum ControlMode {
+    /** fixed speed until inside the tolerance */
+    BANG_BANG,
+    /** trapezoid profile with PID and gravity feedforward, in volts */
+    PROFILED,
+    /** spark max smart motion, the profile and loop run on the motor controllers at 1 kHz */
+    SMART_MOTION;
+  }
+
+  /** one lift motor */
+  private static final DCMotor NEO = DCMotor.getNEO(1);
+
+  /** newton meters at the arm per volt one side of the sim gets more than the other */
+  private static final double SIM_TORQUE_PER_VOLT = NEO.KtNMPerAmp / NEO.rOhms * ARM_GEARING;
+
+  /** newton meters per radian per second, back emf resisting the simulated sides moving apart */
+  private static final double SIM_TWIST_DAMPING = SIM_TORQUE_PER_VOLT * ARM_GEARING / NEO.KvRadPerSecPerVolt;
 
   private final CANSparkMax motorOne;
   private final CANSparkMax motorTwo;
@@ -39,9 +74,109 @@ public class LiftSystem extends SubsystemBase implements Testable {
 
   private final DigitalInput limitUp;
   private final DigitalInput limitDown;
+
+  /** stop the motors as soon as a limit switch closes, instead of on the next loop */
+  private final AsynchronousInterrupt limitUpInterrupt;
+  private final AsynchronousInterrupt limitDownInterrupt;
+
+  /**
+   * limit switch state kept by the interrupts. named like the switches: limitUp stops downward
+   * travel and limitDown stops upward travel, see liftArms
+   */
+  private volatile boolean limitUpLatched;
+  private volatile boolean limitDownLatched;
+
+  /** held while setting motor outputs, so an interrupt can't be overwritten by a loop half way through */
+  private final Object outputLock = new Object();
+
+  /** direction of the last output, positive up. guarded by outputLock */
+  private double lastDirection = 0;
+
+  /** correct the difference between the sides on every output */
+  private boolean synced = true;
+
+  /** the sides got too far apart, the lift holds still until it's cleared */
+  private boolean syncFault = false;
+
+  /** arm rotations, largest side error since the last position move started */
+  private double maxSideError = 0;
+
+  /**
+   * seconds from a limit switch edge to the handler telling both motors to stop. only covers
+   * interrupt dispatch, not the CAN frame or the motors slowing down, and is 0 in simulation
+   */
+  private volatile double stopLatency = Double.NaN;
+  private volatile double maxStopLatency = 0;
+  private volatile int limitStops = 0;
   
   private final DutyCycleEncoder armEncoder;
   private final RelativeEncoder motorEncoder;
+  private final RelativeEncoder motorTwoEncoder;
+
+  /** every lift sensor value, read once at the start of each loop */
+  private static class Inputs {
+    /** absolute arm position from 0 to 1 */
+    double armPosition;
+
+    /** motor rpm */
+    double motorVelocity;
+
+    /** arm rotations above horizontal by the motor encoder, seeded from the absolute encoder */
+    double motorPosition;
+    double motorTwoPosition;
+
+    /** arm rotations motor one is ahead of motor two */
+    double sideError;
+
+    /** limit switches, as latched by the interrupts */
+    boolean limitUpTriggered;
+    boolean limitDownTriggered;
+  }
+
+  private final Inputs inputs = new Inputs();
+
+  private final ArmController armController = new ArmController();
+
+  private ControlMode controlMode = ControlMode.PROFILED;
+
+  /** mode of the running position command, picked when it starts */
+  private ControlMode activeMode = controlMode;
+
+  /** absolute encoder position the running position command is moving to, NaN if none */
+  private double goalPosition = Double.NaN;
+
+  /** what smart motion should be doing, only used to measure how well it tracks */
+  private TrapezoidProfile smartMotionProfile;
+
+  /** seconds */
+  private double moveStart;
+
+  /** absolute encoder position the arm should be at minus where it is, NaN if not moving to a position */
+  private double trackingError = Double.NaN;
+  private double maxTrackingError = 0;
+
+  // simulation only, null on the robot
+  private final SingleJointedArmSim armSim;
+  private final DutyCycleEncoderSim armEncoderSim;
+  private final DIOSim limitUpSim;
+  private final DIOSim limitDownSim;
+
+  /** FPGA time of the last arm sim update - seconds */
+  private double lastSimTime;
+
+  /** volts motor two needs on top of motor one to carry the extra load on its side of the sim */
+  private double simSideLoad = 0;
+
+  /** radians side one of the simulated arm is twisted ahead of side two */
+  private double simTwist = 0;
+
+  /** arm rotations added to each simulated motor encoder reading, so it reads what it was set to */
+  private double simOffsetOne = 0;
+  private double simOffsetTwo = 0;
+
+  private final LoopProfiler.Phase periodicPhase = LoopProfiler.getInstance().phase("LiftSystem.periodic");
+  private final LoopProfiler.Phase simulationPhase = LoopProfiler.getInstance().phase("LiftSystem.simulationPeriodic");
+  private final LoopProfiler profiler = LoopProfiler.getInstance();
 
   /** Creates a new LiftSystem. */
   public LiftSystem() {
@@ -52,7 +187,12 @@ public class LiftSystem extends SubsystemBase implements Testable {
 
     armEncoder = new DutyCycleEncoder(ARM_ENCODER_PORT);
     motorEncoder = motorOne.getEncoder();
-  
+    motorTwoEncoder = motorTwo.getEncoder();
+
+    // the encoders stay in motor rotations and rpm. smart motion plans its profile with position and
+    // velocity in the same units, and the velocity loop gains are tuned in rpm. positions are
+    // converted to arm rotations when the inputs are read
+
     //Setting default values for PID
     pControllerOne = motorOne.getPIDController();
     pControllerOne.setP(P_VALUE);
@@ -64,88 +204,457 @@ public class LiftSystem extends SubsystemBase implements Testable {
     pControllerTwo.setD(D_VALUE);
     pControllerTwo.setFF(FF_VALUE);
 
+    configureSmartMotion(pControllerOne);
+    configureSmartMotion(pControllerTwo);
+
     //Limit Switches
     limitUp = new DigitalInput(LIMIT_SWITCH_UP);
     limitDown = new DigitalInput(LIMIT_SWITCH_DOWN);
 
+    // the arm can already be on a switch
+    limitUpLatched = !limitUp.get();
+    limitDownLatched = !limitDown.get();
+
+    limitUpInterrupt = new AsynchronousInterrupt(limitUp, (rising, falling) -> onLimitSwitch(true, falling));
+    limitDownInterrupt = new AsynchronousInterrupt(limitDown, (rising, falling) -> onLimitSwitch(false, falling));
+    limitUpInterrupt.setInterruptEdges(true, true);
+    limitDownInterrupt.setInterruptEdges(true, true);
+    limitUpInterrupt.enable();
+    limitDownInterrupt.enable();
+
     motorOne.setSmartCurrentLimit(CURRENT_LIMIT);
     motorTwo.setSmartCurrentLimit(CURRENT_LIMIT);
+
+    // both encoders are read every loop to keep the sides together
+    StatusFrames.register(motorOne, Role.MECHANISM);
+    StatusFrames.register(motorTwo, Role.MECHANISM);
+
+    if (Robot.isSimulation()) {
+      // add sparks to physics simulator, DriveSystem steps it for every spark
+      REVPhysicsSim.getInstance().addSparkMax(motorOne, DCMotor.getNEO(1));
+      REVPhysicsSim.getInstance().addSparkMax(motorTwo, DCMotor.getNEO(1));
+
+      // hard stops at the ends of travel, starts stowed
+      armSim = new SingleJointedArmSim(
+        DCMotor.getNEO(2),
+        ARM_GEARING,
+        SingleJointedArmSim.estimateMOI(ARM_LENGTH, ARM_MASS),
+        ARM_LENGTH,
+        ArmController.toAngle(MIN_POSITION),
+        ArmController.toAngle(MAX_POSITION),
+        ARM_MASS,
+        true
+      );
+      armEncoderSim = new DutyCycleEncoderSim(armEncoder);
+      limitUpSim = new DIOSim(limitUp);
+      limitDownSim = new DIOSim(limitDown);
+
+      setSimulatedPosition(LOW_POSITION);
+    } else {
+      armSim = null;
+      armEncoderSim = null;
+      limitUpSim = null;
+      limitDownSim = null;
+    }
+    lastSimTime = Timer.getFPGATimestamp();
+
+    // the sides are compared by position, start them together
+    setMotorPositions(0, 0);
   }
 
   /**
    * @param xboxController Operator
-   * @return Command that uses obtained values from the limit switch to lift the arm within a specified range.
+   * @return Command that lifts the arm with the left stick, the limit switches keep it within range.
    */
   public CommandBase liftArms(XboxController xboxController){
     
     return runEnd(
       () -> {
-        double setPoint = -xboxController.getLeftY() * MAX_SPEED; // Percent output 
-
-        if(!limitUp.get() && (xboxController.getLeftY() > 0)) { 
-          // When the upward limit switch is triggered and the operator attempts to move upward, it will not move upward.
-          pControllerOne.setReference(0, ControlType.kVelocity);
-          pControllerTwo.setReference(0, ControlType.kVelocity);
-        } else if(!limitDown.get() && (xboxController.getLeftY() < 0)) { 
-          // When the downward limit switch is triggered and the operator attempts to move downward, it will not move downward.
-          pControllerOne.setReference(0, ControlType.kVelocity);
-          pControllerTwo.setReference(0, ControlType.kVelocity);
-        } else {
-          pControllerOne.setReference(setPoint, ControlType.kVelocity);
-          pControllerTwo.setReference(setPoint, ControlType.kVelocity);
-        }
+        double setPoint = -xboxController.getLeftY() * MAX_SPEED; // Percent output
+
+        // setOutput won't drive into a closed limit switch
+        setVelocity(setPoint);
       },
 
       () -> {
-        pControllerOne.setReference(0, ControlType.kVelocity);
-        pControllerTwo.setReference(0, ControlType.kVelocity);
+        setVelocity(0);
       }
     );
   }
 
   /**
    * @param Absolute position to lift to
-   * @return Command that uses PID to lift the gripper to the specified position
+   * @return Command that moves the arm to the specified position with the current control mode
    */
   public CommandBase liftArmsToPosition(double desiredPosition){
     double clampedPos = MathUtil.clamp(desiredPosition, MAX_POSITION, MIN_POSITION);
-    return runEnd(
-    //Runs repeatedly until the end
-    () -> {
-      //If position is within the range of desired position, stop there
-      if ((getPosition() < clampedPos + LiftConstants.TOLERANCE) && (getPosition() > clampedPos - LiftConstants.TOLERANCE)){
-        pControllerOne.setReference(0, ControlType.kVelocity);
-        pControllerTwo.setReference(0,ControlType.kVelocity);
-      }
-      //If the current position is lower than the desired position, move the arm up
-      else if(clampedPos - getPosition() < 0){
-        pControllerOne.setReference(0.25, ControlType.kVelocity);
-        pControllerTwo.setReference(0.25,ControlType.kVelocity);
-      }
-      //If higher than desired position, move the arm down
-      else {
-        pControllerOne.setReference(-0.25, ControlType.kVelocity);
-        pControllerTwo.setReference(-0.25,ControlType.kVelocity);
-      }
-    }, 
-    //Runs when command ends
-    () -> {
-        pControllerOne.setReference(0, ControlType.kVelocity);
-        pControllerTwo.setReference(0, ControlType.kVelocity);
-      }
-    ).until(
+    return new FunctionalCommand(
+      () -> {
+        activeMode = controlMode;
+        goalPosition = clampedPos;
+        moveStart = Timer.getFPGATimestamp();
+        maxTrackingError = 0;
+        maxSideError = 0;
+        armController.reset(getPosition());
+
+        // the sparks run the profile, the target is resent every loop with updated feedforward
+        if (activeMode == ControlMode.SMART_MOTION) {
+          startSmartMotion(clampedPos);
+        }
+      },
+
       () -> {
-        return (getPosition() < clampedPos + LiftConstants.TOLERANCE) && (getPosition() > clampedPos - LiftConstants.TOLERANCE);
+        switch (activeMode) {
+          case BANG_BANG:
+            setVelocity(ArmController.bangBang(getPosition(), clampedPos));
+            break;
+          case PROFILED:
+            setVoltage(armController.calculate(getPosition(), clampedPos));
+            break;
+          case SMART_MOTION:
+            setSmartMotion(clampedPos);
+            break;
+        }
+
+        updateTrackingError();
+      },
+
+      interrupted -> {
+        goalPosition = Double.NaN;
+        trackingError = Double.NaN;
+        setVelocity(0);
+      },
+
+      () -> {
+        switch (activeMode) {
+          case PROFILED:
+            return armController.atGoal();
+          case SMART_MOTION:
+            return ArmController.withinTolerance(getPosition(), clampedPos)
+              && smartMotionProfile.isFinished(Timer.getFPGATimestamp() - moveStart);
+          default:
+            return ArmController.withinTolerance(getPosition(), clampedPos);
+        }
+      },
+
+      this
+    );
+  }
+
+  /**
+   * @param mode how position commands started after this move the arm
+   */
+  public void setControlMode(ControlMode mode) {
+    controlMode = mode;
+  }
+
+  public ControlMode getControlMode() {
+    return controlMode;
+  }
+
+  /** from the dashboard, ignores names that aren't a mode */
+  private void setControlMode(String name) {
+    for (ControlMode mode : ControlMode.values()) {
+      if (mode.name().equals(name)) {
+        controlMode = mode;
       }
+    }
+  }
+
+  /** smart motion gains and limits in their own slot */
+  private static void configureSmartMotion(SparkMaxPIDController controller) {
+    controller.setP(SMART_MOTION_P, SMART_MOTION_SLOT);
+    controller.setFF(SMART_MOTION_FF, SMART_MOTION_SLOT);
+    controller.setSmartMotionMaxVelocity(SMART_MOTION_MAX_VELOCITY, SMART_MOTION_SLOT);
+    controller.setSmartMotionMaxAccel(SMART_MOTION_MAX_ACCELERATION, SMART_MOTION_SLOT);
+    controller.setSmartMotionMinOutputVelocity(0, SMART_MOTION_SLOT);
+    controller.setSmartMotionAllowedClosedLoopError(TOLERANCE * ARM_GEARING, SMART_MOTION_SLOT);
+  }
+
+  /**
+   * seed the motor encoders from the absolute encoder and hand both sparks the goal
+   * @param goal absolute encoder position
+   */
+  private void startSmartMotion(double goal) {
+    double start = ArmController.toAngle(getPosition());
+    double end = ArmController.toAngle(goal);
+
+    // keep the difference between the sides, seeding both the same would hide a twist from the sync check
+    double seed = start / (2 * Math.PI);
+    setMotorPositions(seed, seed - inputs.sideError);
+
+    setSmartMotion(goal);
+
+    smartMotionProfile = new TrapezoidProfile(
+      new TrapezoidProfile.Constraints(ARM_MAX_VELOCITY, ARM_MAX_ACCELERATION),
+      new TrapezoidProfile.State(end, 0),
+      new TrapezoidProfile.State(start, 0)
     );
   }
 
+  /**
+   * send the smart motion target with gravity at the arm's current angle and the sync correction.
+   * the target doesn't change during a move, so the sparks keep following the same profile
+   * @param goal absolute encoder position
+   */
+  private void setSmartMotion(double goal) {
+    double angle = ArmController.toAngle(getPosition());
+    double end = ArmController.toAngle(goal);
+
+    double gravity = ARM_KG * Math.cos(angle);
+    setOutput(end / (2 * Math.PI) * ARM_GEARING, ControlType.kSmartMotion, SMART_MOTION_SLOT, gravity, end - angle);
+  }
+
+  /** compare where the arm is to where the active mode wants it this loop */
+  private void updateTrackingError() {
+    double expected;
+    switch (activeMode) {
+      case PROFILED:
+        expected = armController.getSetpoint();
+        break;
+      case SMART_MOTION:
+        expected = ArmController.toPosition(smartMotionProfile.calculate(Timer.getFPGATimestamp() - moveStart).position);
+        break;
+      default:
+        // no profile, only a goal
+        expected = goalPosition;
+        break;
+    }
+
+    trackingError = expected - getPosition();
+    maxTrackingError = Math.max(maxTrackingError, Math.abs(trackingError));
+  }
+
+  /**
+   * @param velocity velocity reference for both motors, positive up
+   */
+  private void setVelocity(double velocity) {
+    setOutput(velocity, ControlType.kVelocity, 0, 0, velocity);
+  }
+
+  /**
+   * @param volts for both motors, positive up
+   */
+  private void setVoltage(double volts) {
+    setOutput(volts, ControlType.kVoltage, 0, 0, volts);
+  }
+
+  /**
+   * every lift motor output goes through here. anything driving into a closed limit switch, or
+   * anything at all after a sync fault, is replaced with holding still. when synced the side
+   * that's ahead gets less voltage and the one behind gets more
+   * @param feedforward volts
+   * @param direction positive up, negative down
+   */
+  private void setOutput(double value, ControlType type, int slot, double feedforward, double direction) {
+    synchronized (outputLock) {
+      if (syncFault || (direction < 0 && limitUpLatched) || (direction > 0 && limitDownLatched)) {
+        value = 0;
+        type = ControlType.kVelocity;
+        slot = 0;
+        feedforward = 0;
+        direction = 0;
+      }
+      lastDirection = direction;
+
+      // on top of whatever loop is running
+      double correction = synced && !syncFault ? SYNC_P * inputs.sideError / 2 : 0;
+
+      pControllerOne.setReference(value, type, slot, feedforward - correction, ArbFFUnits.kVoltage);
+      pControllerTwo.setReference(value, type, slot, feedforward + correction, ArbFFUnits.kVoltage);
+    }
+  }
+
+  /**
+   * @param synced whether to correct the difference between the sides
+   */
+  public void setSynchronized(boolean synced) {
+    this.synced = synced;
+  }
+
+  /**
+   * @return whether the sides got further apart than SYNC_FAULT_THRESHOLD
+   */
+  public boolean hasSyncFault() {
+    return syncFault;
+  }
+
+  /**
+   * let the lift move again after a sync fault that didn't clear itself, once the arm has been
+   * checked. motor two's encoder is matched to motor one's
+   */
+  public void clearSyncFault() {
+    setMotorPositions(inputs.motorPosition, inputs.motorPosition);
+    maxSideError = 0;
+    syncFault = false;
+  }
+
+  /**
+   * @return arm rotations motor one is ahead of motor two, as of the start of this loop
+   */
+  public double getSideError() {
+    return inputs.sideError;
+  }
+
+  /**
+   * set what the motor encoders read
+   * @param one motor one, arm rotations
+   * @param two motor two, arm rotations
+   */
+  private void setMotorPositions(double one, double two) {
+    motorEncoder.setPosition(one * ARM_GEARING);
+    motorTwoEncoder.setPosition(two * ARM_GEARING);
+
+    if (Robot.isSimulation()) {
+      simOffsetOne += one - getSimulatedMotorPosition(true);
+      simOffsetTwo += two - getSimulatedMotorPosition(false);
+    }
+
+    inputs.motorPosition = one;
+    inputs.motorTwoPosition = two;
+    inputs.sideError = one - two;
+  }
+
+  /**
+   * stop the lift if the sides are too far apart, the arm is racking. if they come back together
+   * while stopped it was only a twist and the lift can move again, a skipped tooth stays faulted
+   */
+  private void checkSync() {
+    maxSideError = Math.max(maxSideError, Math.abs(inputs.sideError));
+
+    if (!syncFault && Math.abs(inputs.sideError) > SYNC_FAULT_THRESHOLD) {
+      syncFault = true;
+      setVelocity(0);
+    } else if (syncFault && Math.abs(inputs.sideError) < SYNC_CLEAR_THRESHOLD) {
+      syncFault = false;
+    }
+  }
+
+  /**
+   * runs on the interrupt thread whenever a limit switch changes
+   * @param up limitUp, otherwise limitDown
+   * @param closed falling edge, the switches are active low
+   */
+  private void onLimitSwitch(boolean up, boolean closed) {
+    DigitalInput limitSwitch = up ? limitUp : limitDown;
+    AsynchronousInterrupt interrupt = up ? limitUpInterrupt : limitDownInterrupt;
+
+    synchronized (outputLock) {
+      // the switch can bounce, go by where it is now
+      boolean triggered = !limitSwitch.get();
+      if (up) {
+        limitUpLatched = triggered;
+      } else {
+        limitDownLatched = triggered;
+      }
+
+      // only stop travel toward the switch, the arm is allowed to drive off it
+      boolean towardSwitch = up ? lastDirection < 0 : lastDirection > 0;
+      if (closed && towardSwitch) {
+        lastDirection = 0;
+        motorOne.stopMotor();
+        motorTwo.stopMotor();
+
+        double latency = Timer.getFPGATimestamp() - interrupt.getFallingTimestamp();
+        stopLatency = latency;
+        maxStopLatency = Math.max(maxStopLatency, latency);
+        limitStops++;
+      }
+    }
+  }
 
   /**
-   * @return absolute position from 0 to 1
+   * @return absolute position from 0 to 1, as of the start of this loop
    */
   public double getPosition(){
-    return armEncoder.getAbsolutePosition();
+    return inputs.armPosition;
+  }
+
+  /**
+   * move the simulated arm and stop it there, does nothing on the robot
+   * @param position absolute encoder position
+   */
+  public void setSimulatedPosition(double position) {
+    if (!Robot.isSimulation()) {
+      return;
+    }
+
+    armSim.setState(VecBuilder.fill(ArmController.toAngle(position), 0));
+    simTwist = 0;
+    updateSimulatedSensors();
+
+    // commands scheduled before the next loop see the new position
+    captureInputs();
+  }
+
+  /**
+   * @return absolute encoder position of the arm simulation, NaN on the robot
+   */
+  public double getSimulatedPosition() {
+    if (!Robot.isSimulation()) {
+      return Double.NaN;
+    }
+
+    return ArmController.toPosition(armSim.getAngleRads());
+  }
+
+  /**
+   * load one side of the simulated arm more than the other, does nothing on the robot
+   * @param volts motor two needs on top of motor one to carry it, 0 for an even load
+   */
+  public void setSimulatedSideLoad(double volts) {
+    if (!Robot.isSimulation()) {
+      return;
+    }
+
+    simSideLoad = volts;
+  }
+
+  /**
+   * what a simulated motor encoder reads. the sides can only move apart as far as the arm twists
+   * @param one motor one, otherwise motor two
+   * @return arm rotations
+   */
+  private double getSimulatedMotorPosition(boolean one) {
+    double arm = armSim.getAngleRads() / (2 * Math.PI);
+    double twist = simTwist / (2 * Math.PI) / 2;
+    return one ? arm + twist + simOffsetOne : arm - twist + simOffsetTwo;
+  }
+
+  /** point the absolute encoder and limit switches at the arm sim */
+  private void updateSimulatedSensors() {
+    double position = getSimulatedPosition();
+    armEncoderSim.setAbsolutePosition(position);
+
+    // active low, and named backwards: limitUp stops downward travel, see liftArms
+    limitUpSim.setValue(position < MIN_POSITION - SIM_LIMIT_SWITCH_RANGE);
+    limitDownSim.setValue(position > MAX_POSITION + SIM_LIMIT_SWITCH_RANGE);
+  }
+
+  /**
+   * reads every sensor the lift uses exactly once, commands and sendables
+   * read the frame instead of the hardware
+   */
+  private void captureInputs() {
+    inputs.armPosition = armEncoder.getAbsolutePosition();
+    profiler.countHardwareRead();
+    inputs.motorVelocity = motorEncoder.getVelocity();
+    profiler.countHardwareRead();
+    if (Robot.isReal()) {
+      inputs.motorPosition = motorEncoder.getPosition() / ARM_GEARING;
+      profiler.countHardwareRead();
+      inputs.motorTwoPosition = motorTwoEncoder.getPosition() / ARM_GEARING;
+      profiler.countHardwareRead();
+    } else {
+      // REVPhysicsSim turns each motor on its own, but both turn the same arm
+      inputs.motorPosition = getSimulatedMotorPosition(true);
+      inputs.motorTwoPosition = getSimulatedMotorPosition(false);
+    }
+    inputs.sideError = inputs.motorPosition - inputs.motorTwoPosition;
+
+    // latched by the interrupts, no read here
+    inputs.limitUpTriggered = limitUpLatched;
+    inputs.limitDownTriggered = limitDownLatched;
   }
 
   /**
@@ -160,15 +669,70 @@ public class LiftSystem extends SubsystemBase implements Testable {
   public void initSendable(SendableBuilder builder) {
     builder.addDoubleProperty("Through-bore encoder position", this::getPosition, null);
   
-    builder.addDoubleProperty("Motor encoder velocity", motorEncoder::getVelocity, null);
+    builder.addDoubleProperty("Motor encoder velocity", () -> inputs.motorVelocity, null);
+
+    builder.addBooleanProperty("Up Limit Switch", () -> inputs.limitDownTriggered, null);
+    builder.addBooleanProperty("Down Limit Switch", () -> inputs.limitUpTriggered, null);
+
+    builder.addStringProperty("Control mode", () -> controlMode.toString(), this::setControlMode);
+    builder.addDoubleProperty("Goal position", () -> goalPosition, null);
+    builder.addDoubleProperty("Profile setpoint", armController::getSetpoint, null);
+    builder.addDoubleProperty("Motor encoder position", () -> inputs.motorPosition, null);
+    builder.addDoubleProperty("Tracking error", () -> trackingError, null);
+    builder.addDoubleProperty("Max tracking error", () -> maxTrackingError, null);
+
+    builder.addDoubleProperty("Side error", () -> inputs.sideError, null);
+    builder.addDoubleProperty("Max side error", () -> maxSideError, null);
+    builder.addBooleanProperty("Synchronized", () -> synced, this::setSynchronized);
+    builder.addBooleanProperty("Sync fault", () -> syncFault, fault -> {
+      if (!fault) {
+        clearSyncFault();
+      }
+    });
 
-    builder.addBooleanProperty("Up Limit Switch", () -> !limitDown.get(), null);
-    builder.addBooleanProperty("Down Limit Switch", () -> !limitUp.get(), null);
+    builder.addDoubleProperty("Limit handler latency (ms)", () -> stopLatency * 1000, null);
+    builder.addDoubleProperty("Max limit handler latency (ms)", () -> maxStopLatency * 1000, null);
+    builder.addDoubleProperty("Limit stops", () -> limitStops, null);
   }
 
   @Override
   public void periodic() {
     // This method will be called once per scheduler run
+    periodicPhase.start();
+
+    // read all sensors once for this loop
+    captureInputs();
+    checkSync();
+
+    periodicPhase.stop();
+  }
+
+  @Override
+  public void simulationPeriodic() {
+    simulationPhase.start();
+
+    // integrate over the time that actually passed, loops can run late
+    double now = Timer.getFPGATimestamp();
+    double dt = Math.min(now - lastSimTime, ARM_SIM_MAX_DT);
+    lastSimTime = now;
+
+    // both motors turn the same arm, positive output is up. motor two's side carries the side load
+    double voltage = RobotController.getInputVoltage();
+    double one = motorOne.getAppliedOutput() * voltage;
+    double two = motorTwo.getAppliedOutput() * voltage - simSideLoad;
+    armSim.setInputVoltage((one + two) / 2);
+
+    if (dt > 0) {
+      armSim.update(dt);
+
+      // the side pushing harder twists ahead until the arm's stiffness holds it, back emf slows the twist
+      double twist = SIM_TORQUE_PER_VOLT * (one - two) / SIM_ARM_STIFFNESS;
+      simTwist = twist + (simTwist - twist) * Math.exp(-dt * SIM_ARM_STIFFNESS / SIM_TWIST_DAMPING);
+    }
+
+    updateSimulatedSensors();
+
+    simulationPhase.stop();
   }
 
   @Override
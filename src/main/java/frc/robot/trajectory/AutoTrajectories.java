@@ -0,0 +1,66 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.trajectory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.DifferentialDriveKinematics;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+
+import static frc.robot.Constants.AutoConstants.*;
+import static frc.robot.Constants.DriveConstants.TRACK_WIDTH;
+
+/**
+ * Paths for the autonomous routines. Generated at build time by {@link GenerateTrajectories},
+ * never on the robot.
+ *
+ * <p>Paths are in odometry coordinates relative to the starting pose. Odometry +x is the direction
+ * the robot backs away from the grid in, so these replace the old turn, back up, turn, back up steps
+ * with one smooth path ending at the same place.
+ */
+public final class AutoTrajectories {
+  public static final String LEFT_SIDE_BLUE = "left-side-blue";
+  public static final String RIGHT_SIDE_BLUE = "right-side-blue";
+  public static final String LEFT_SIDE_RED = "left-side-red";
+  public static final String RIGHT_SIDE_RED = "right-side-red";
+
+  /**
+   * @return every auto trajectory by name
+   */
+  public static Map<String, Trajectory> generateAll() {
+    TrajectoryConfig config = new TrajectoryConfig(TRAJECTORY_MAX_VELOCITY, TRAJECTORY_MAX_ACCELERATION)
+      .setKinematics(new DifferentialDriveKinematics(TRACK_WIDTH));
+
+    Map<String, Trajectory> trajectories = new LinkedHashMap<>();
+
+    // 0.5 m out at 40 degrees, then 1.7 m or 3.05 m straight
+    trajectories.put(LEFT_SIDE_BLUE, leave(2.083, 0.321, config));
+    trajectories.put(RIGHT_SIDE_BLUE, leave(3.433, -0.321, config));
+    trajectories.put(LEFT_SIDE_RED, leave(3.433, 0.321, config));
+    trajectories.put(RIGHT_SIDE_RED, leave(2.083, -0.321, config));
+
+    return trajectories;
+  }
+
+  /** path from the start to a pose facing the same way as the start */
+  private static Trajectory leave(double x, double y, TrajectoryConfig config) {
+    return TrajectoryGenerator.generateTrajectory(
+      new Pose2d(),
+      List.of(),
+      new Pose2d(x, y, new Rotation2d()),
+      config
+    );
+  }
+
+  private AutoTrajectories() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+}
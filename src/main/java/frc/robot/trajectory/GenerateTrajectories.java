@@ -0,0 +1,42 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.trajectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import edu.wpi.first.math.trajectory.Trajectory;
+
+/**
+ * Build step that writes every auto trajectory into the deploy directory.
+ * Run by the generateTrajectories gradle task, which deploy depends on.
+ */
+public final class GenerateTrajectories {
+  /**
+   * @param args output directory
+   * @throws IOException if a trajectory can't be written
+   */
+  public static void main(String[] args) throws IOException {
+    File directory = new File(args[0]);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+
+    for (Map.Entry<String, Trajectory> entry : AutoTrajectories.generateAll().entrySet()) {
+      File file = new File(directory, entry.getKey() + TrajectoryFile.EXTENSION);
+      TrajectoryFile.write(file, entry.getValue());
+
+      System.out.printf(
+        "%s: %d states, %.2f s%n",
+        file.getName(), entry.getValue().getStates().size(), entry.getValue().getTotalTimeSeconds()
+      );
+    }
+  }
+
+  private GenerateTrajectories() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+}
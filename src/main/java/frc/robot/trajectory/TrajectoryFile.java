@@ -0,0 +1,102 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.trajectory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+
+/**
+ * Compact binary trajectory format, 28 bytes per state.
+ *
+ * <pre>
+ * int   magic
+ * int   number of states
+ * per state, as floats:
+ *   time (s), velocity (m/s), acceleration (m/s^2), x (m), y (m), heading (rad), curvature (rad/m)
+ * </pre>
+ */
+public final class TrajectoryFile {
+  /** file extension for trajectories in the deploy directory */
+  public static final String EXTENSION = ".traj";
+
+  /** "TRJ1" */
+  private static final int MAGIC = 0x54524A31;
+
+  /**
+   * @param file file to write, replaced if it exists
+   * @param trajectory trajectory to write
+   * @throws IOException if the file can't be written
+   */
+  public static void write(File file, Trajectory trajectory) throws IOException {
+    List<Trajectory.State> states = trajectory.getStates();
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(states.size());
+
+      for (Trajectory.State state : states) {
+        out.writeFloat((float) state.timeSeconds);
+        out.writeFloat((float) state.velocityMetersPerSecond);
+        out.writeFloat((float) state.accelerationMetersPerSecondSq);
+        out.writeFloat((float) state.poseMeters.getX());
+        out.writeFloat((float) state.poseMeters.getY());
+        out.writeFloat((float) state.poseMeters.getRotation().getRadians());
+        out.writeFloat((float) state.curvatureRadPerMeter);
+      }
+    }
+  }
+
+  /**
+   * @param file file written by {@link #write(File, Trajectory)}
+   * @return the trajectory in the file
+   * @throws IOException if the file can't be read or isn't a trajectory
+   */
+  public static Trajectory read(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(file.getName() + " is not a trajectory file");
+      }
+
+      int count = in.readInt();
+      List<Trajectory.State> states = new ArrayList<>(count);
+
+      for (int i = 0; i < count; i++) {
+        double time = in.readFloat();
+        double velocity = in.readFloat();
+        double acceleration = in.readFloat();
+        double x = in.readFloat();
+        double y = in.readFloat();
+        double heading = in.readFloat();
+        double curvature = in.readFloat();
+
+        states.add(new Trajectory.State(
+          time,
+          velocity,
+          acceleration,
+          new Pose2d(x, y, new Rotation2d(heading)),
+          curvature
+        ));
+      }
+
+      return new Trajectory(states);
+    }
+  }
+
+  private TrajectoryFile() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+}
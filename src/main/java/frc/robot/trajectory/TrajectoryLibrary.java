@@ -0,0 +1,53 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.trajectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/** Trajectories read from the deploy directory at startup */
+public final class TrajectoryLibrary {
+  private static final Map<String, Trajectory> trajectories = new HashMap<>();
+
+  /**
+   * read every trajectory file in a directory, files that fail to load are reported and skipped
+   * @param directory directory written by {@link GenerateTrajectories}
+   */
+  public static void load(File directory) {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(TrajectoryFile.EXTENSION));
+
+    if (files == null) {
+      DriverStation.reportWarning("No trajectories found in " + directory, false);
+      return;
+    }
+
+    for (File file : files) {
+      String name = file.getName().substring(0, file.getName().length() - TrajectoryFile.EXTENSION.length());
+
+      try {
+        trajectories.put(name, TrajectoryFile.read(file));
+      } catch (IOException e) {
+        DriverStation.reportError("Could not load trajectory " + file.getName() + ": " + e.getMessage(), false);
+      }
+    }
+  }
+
+  /**
+   * @param name file name without the extension
+   * @return the trajectory, or null if it wasn't deployed
+   */
+  public static Trajectory get(String name) {
+    return trajectories.get(name);
+  }
+
+  private TrajectoryLibrary() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ArmFeedforward;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+
+import static frc.robot.Constants.LiftConstants.*;
+
+/**
+ * Lift position control, from an absolute encoder position to motor volts. The arm follows a
+ * trapezoid profile to the goal, with PID on the profile and an arm feedforward that holds it up
+ * against gravity.
+ *
+ * <p>Positions are absolute encoder readings from 0 to 1, where smaller is higher. Internally
+ * everything is an arm angle in radians, zero horizontal and positive up, which is what the
+ * feedforward expects.
+ */
+public class ArmController {
+  private final ProfiledPIDController controller = new ProfiledPIDController(
+    ARM_P, 0, ARM_D,
+    new TrapezoidProfile.Constraints(ARM_MAX_VELOCITY, ARM_MAX_ACCELERATION)
+  );
+
+  private final ArmFeedforward feedforward = new ArmFeedforward(ARM_KS, ARM_KG, ARM_KV, ARM_KA);
+
+  /** radians per second, setpoint velocity last loop */
+  private double lastVelocity = 0;
+
+  public ArmController() {
+    controller.setTolerance(toRadians(TOLERANCE), ARM_VELOCITY_TOLERANCE);
+  }
+
+  /**
+   * start a new profile from where the arm is, at rest
+   * @param position absolute encoder position
+   */
+  public void reset(double position) {
+    controller.reset(toAngle(position));
+    lastVelocity = 0;
+  }
+
+  /**
+   * @param position absolute encoder position
+   * @param goal absolute encoder position to move to
+   * @return volts, positive up
+   */
+  public double calculate(double position, double goal) {
+    double correction = controller.calculate(toAngle(position), toAngle(goal));
+
+    TrapezoidProfile.State setpoint = controller.getSetpoint();
+    double acceleration = (setpoint.velocity - lastVelocity) / controller.getPeriod();
+    lastVelocity = setpoint.velocity;
+
+    double volts = correction + feedforward.calculate(setpoint.position, setpoint.velocity, acceleration);
+    return MathUtil.clamp(volts, -ARM_MAX_VOLTAGE, ARM_MAX_VOLTAGE);
+  }
+
+  /**
+   * @return whether the arm is at the goal and has stopped
+   */
+  public boolean atGoal() {
+    return controller.atGoal();
+  }
+
+  /**
+   * @return absolute encoder position the profile is at
+   */
+  public double getSetpoint() {
+    return toPosition(controller.getSetpoint().position);
+  }
+
+  /**
+   * the old position control, a fixed speed toward the goal until it's inside the tolerance
+   * @return velocity reference, positive up
+   */
+  public static double bangBang(double position, double goal) {
+    if (withinTolerance(position, goal)) {
+      return 0;
+    }
+
+    // smaller positions are higher
+    return position > goal ? BANG_BANG_SPEED : -BANG_BANG_SPEED;
+  }
+
+  /**
+   * @return whether two absolute encoder positions are within TOLERANCE
+   */
+  public static boolean withinTolerance(double position, double goal) {
+    return Math.abs(position - goal) < TOLERANCE;
+  }
+
+  /**
+   * @return radians from horizontal, positive up
+   */
+  public static double toAngle(double position) {
+    return toRadians(HORIZONTAL_POSITION - position);
+  }
+
+  /**
+   * @return absolute encoder position
+   */
+  public static double toPosition(double angle) {
+    return HORIZONTAL_POSITION - angle / (2 * Math.PI);
+  }
+
+  /** encoder rotations to radians */
+  private static double toRadians(double rotations) {
+    return rotations * 2 * Math.PI;
+  }
+}
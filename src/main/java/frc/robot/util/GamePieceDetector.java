@@ -0,0 +1,151 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.math.filter.MedianFilter;
+
+import static frc.robot.Constants.GripperConstants.*;
+
+/**
+ * Decides when the intake has a game piece from roller current. The current is median filtered so
+ * single spikes don't count, ignored while the roller spins up, and has to stay over the game
+ * piece's stall current for its debounce time.
+ *
+ * <p>Not thread safe, the owner feeds it samples and reads it under one lock.
+ */
+public class GamePieceDetector {
+  /** current signature of each game piece */
+  public enum GamePiece {
+    CONE(CONE_STALL_CURRENT, CONE_DEBOUNCE),
+    CUBE(CUBE_STALL_CURRENT, CUBE_DEBOUNCE);
+
+    /** amps, filtered current that means the piece is in */
+    public final double stallCurrent;
+
+    /** seconds the current has to stay there */
+    public final double debounce;
+
+    GamePiece(double stallCurrent, double debounce) {
+      this.stallCurrent = stallCurrent;
+      this.debounce = debounce;
+    }
+  }
+
+  public enum State {
+    /** not intaking */
+    IDLE,
+    /** roller inrush, current is ignored */
+    SPIN_UP,
+    /** watching for a stall */
+    INTAKING,
+    /** holding a game piece */
+    DETECTED;
+  }
+
+  private final MedianFilter filter = new MedianFilter(DETECTION_SAMPLES);
+
+  private State state = State.IDLE;
+  private GamePiece gamePiece;
+
+  /** time the current state started - seconds */
+  private double stateStart;
+
+  /** time the filtered current went over the stall current, NaN while under - seconds */
+  private double stallStart = Double.NaN;
+
+  /** amps */
+  private double filteredCurrent = 0;
+
+  /**
+   * start watching for a game piece, the roller should be starting now
+   * @param time seconds
+   */
+  public void start(GamePiece gamePiece, double time) {
+    this.gamePiece = gamePiece;
+    setState(State.SPIN_UP, time);
+    filter.reset();
+  }
+
+  /**
+   * stop watching, a detected game piece stays detected
+   * @param time seconds
+   */
+  public void stop(double time) {
+    if (state != State.DETECTED) {
+      setState(State.IDLE, time);
+    }
+  }
+
+  /**
+   * forget the game piece, e.g. after outtaking it
+   * @param time seconds
+   */
+  public void clear(double time) {
+    gamePiece = null;
+    setState(State.IDLE, time);
+  }
+
+  /**
+   * add a current sample
+   * @param current roller current - amps
+   * @param time seconds
+   * @return state after the sample
+   */
+  public State update(double current, double time) {
+    // keep the filter full through spin up so it's ready when blanking ends
+    filteredCurrent = filter.calculate(current);
+
+    switch (state) {
+      case SPIN_UP:
+        if (time - stateStart >= SPIN_UP_BLANKING) {
+          setState(State.INTAKING, time);
+        }
+        break;
+
+      case INTAKING:
+        if (filteredCurrent < gamePiece.stallCurrent) {
+          stallStart = Double.NaN;
+        } else if (Double.isNaN(stallStart)) {
+          stallStart = time;
+        } else if (time - stallStart >= gamePiece.debounce) {
+          setState(State.DETECTED, time);
+        }
+        break;
+
+      default:
+        break;
+    }
+
+    return state;
+  }
+
+  private void setState(State state, double time) {
+    this.state = state;
+    stateStart = time;
+    stallStart = Double.NaN;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * @return game piece being intaken or held, null if none
+   */
+  public GamePiece getGamePiece() {
+    return gamePiece;
+  }
+
+  public boolean hasGamePiece() {
+    return state == State.DETECTED;
+  }
+
+  /**
+   * @return amps
+   */
+  public double getFilteredCurrent() {
+    return filteredCurrent;
+  }
+}
@@ -0,0 +1,151 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import edu.wpi.first.wpilibj.util.Color8Bit;
+
+/**
+ * An LED animation with every frame worked out when it's created, so showing a frame is a copy.
+ * Build patterns once at startup for the length of the segment they'll be shown on.
+ *
+ * <p>Frames are picked by time, or for a progress bar by a value from 0 to 1.
+ */
+public final class LEDPattern {
+  /** frames as red, green, blue per pixel */
+  private final byte[][] frames;
+
+  /** pixels */
+  private final int length;
+
+  /** seconds each frame is shown, 0 for a still pattern */
+  private final double framePeriod;
+
+  /** picks the frame instead of time, null for timed patterns */
+  private final DoubleSupplier progress;
+
+  private LEDPattern(int length, int frameCount, double framePeriod, DoubleSupplier progress) {
+    this.length = length;
+    this.framePeriod = framePeriod;
+    this.progress = progress;
+
+    frames = new byte[frameCount][length * 3];
+  }
+
+  /**
+   * one color on every pixel
+   * @param length pixels
+   */
+  public static LEDPattern solid(Color8Bit color, int length) {
+    LEDPattern pattern = new LEDPattern(length, 1, 0, null);
+    pattern.fill(0, 0, length, color);
+    return pattern;
+  }
+
+  /**
+   * on for half the period, off for the other half
+   * @param period seconds
+   * @param length pixels
+   */
+  public static LEDPattern blink(Color8Bit color, double period, int length) {
+    LEDPattern pattern = new LEDPattern(length, 2, period / 2, null);
+    pattern.fill(0, 0, length, color);
+    return pattern;
+  }
+
+  /**
+   * a block of color moving along the strip and wrapping around
+   * @param width pixels lit
+   * @param speed pixels per second
+   * @param length pixels
+   */
+  public static LEDPattern chase(Color8Bit color, Color8Bit background, int width, double speed, int length) {
+    LEDPattern pattern = new LEDPattern(length, length, 1 / speed, null);
+
+    for (int frame = 0; frame < length; frame++) {
+      pattern.fill(frame, 0, length, background);
+      for (int i = 0; i < width; i++) {
+        pattern.set(frame, (frame + i) % length, color);
+      }
+    }
+
+    return pattern;
+  }
+
+  /**
+   * bar filled from the start of the segment
+   * @param progress 0 to 1, read whenever the strip is rendered so it must be safe to call from any thread
+   * @param length pixels
+   */
+  public static LEDPattern progress(Color8Bit color, Color8Bit background, DoubleSupplier progress, int length) {
+    LEDPattern pattern = new LEDPattern(length, length + 1, 0, progress);
+
+    for (int frame = 0; frame <= length; frame++) {
+      pattern.fill(frame, 0, frame, color);
+      pattern.fill(frame, frame, length, background);
+    }
+
+    return pattern;
+  }
+
+  private void set(int frame, int pixel, Color8Bit color) {
+    byte[] rgb = frames[frame];
+    rgb[pixel * 3] = (byte) color.red;
+    rgb[pixel * 3 + 1] = (byte) color.green;
+    rgb[pixel * 3 + 2] = (byte) color.blue;
+  }
+
+  private void fill(int frame, int start, int end, Color8Bit color) {
+    for (int i = start; i < end; i++) {
+      set(frame, i, color);
+    }
+  }
+
+  /**
+   * @return pixels
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return number of precomputed frames
+   */
+  public int getFrameCount() {
+    return frames.length;
+  }
+
+  /**
+   * which frame to show
+   * @param time seconds
+   */
+  public int frameAt(double time) {
+    if (progress != null) {
+      return (int) Math.round(MathUtil.clamp(progress.getAsDouble(), 0, 1) * length);
+    }
+
+    if (framePeriod <= 0) {
+      return 0;
+    }
+
+    return (int) (time / framePeriod) % frames.length;
+  }
+
+  /**
+   * copy one frame into a buffer
+   * @param frame from {@link #frameAt(double)}
+   * @param start first pixel in the buffer
+   */
+  public void copyFrame(int frame, AddressableLEDBuffer buffer, int start) {
+    byte[] rgb = frames[frame];
+
+    for (int i = 0, pixel = start; i < rgb.length; i += 3, pixel++) {
+      buffer.setRGB(pixel, rgb[i] & 0xFF, rgb[i + 1] & 0xFF, rgb[i + 2] & 0xFF);
+    }
+  }
+}
@@ -0,0 +1,537 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.Arrays;
+
+/**
+ * One frame of the limelight "json" results dump, with a streaming parser that fills records
+ * allocated up front. Parsing reads the text in place and never allocates, so the same instance
+ * can be reused for every frame.
+ *
+ * <p>Only the parts we use are kept: frame timing, the blue alliance bot pose and every visible
+ * AprilTag. Everything else is skipped.
+ */
+public class LimelightResults {
+  /** tags kept per frame, extra tags are counted but not stored */
+  public static final int MAX_FIDUCIALS = 16;
+
+  /** corner points kept per tag */
+  public static final int MAX_CORNERS = 4;
+
+  /** one visible AprilTag */
+  public static final class Fiducial {
+    /** AprilTag ID */
+    public int id;
+
+    /** degrees from the crosshair */
+    public double horizontalOffset;
+    public double verticalOffset;
+
+    /** percent of the image */
+    public double area;
+
+    /** robot pose in field space from this tag alone: x, y, z (meters), roll, pitch, yaw (degrees) */
+    public final double[] robotPoseField = new double[6];
+
+    /** tag pose in robot space: x, y, z (meters), roll, pitch, yaw (degrees) */
+    public final double[] targetPoseRobot = new double[6];
+
+    /** corner pixels as x, y pairs */
+    public final double[] corners = new double[MAX_CORNERS * 2];
+    public int cornerCount;
+
+    private void clear() {
+      id = -1;
+      horizontalOffset = 0;
+      verticalOffset = 0;
+      area = 0;
+      Arrays.fill(robotPoseField, 0);
+      Arrays.fill(targetPoseRobot, 0);
+      cornerCount = 0;
+    }
+  }
+
+  /** whether the limelight sees any target */
+  public boolean hasTargets;
+
+  /** degrees from the crosshair to the largest target, tag or retroreflective. NaN without one */
+  public double targetHorizontalOffset;
+  public double targetVerticalOffset;
+
+  /** percent of the image the largest target covers, NaN without one */
+  public double targetArea;
+
+  /** limelight time the frame was captured - milliseconds */
+  public double timestamp;
+
+  /** milliseconds */
+  public double pipelineLatency;
+  public double captureLatency;
+
+  /** active pipeline */
+  public int pipeline;
+
+  /** blue alliance bot pose: x, y, z (meters), roll, pitch, yaw (degrees) */
+  public final double[] botPose = new double[6];
+  public boolean hasBotPose;
+
+  /** visible tags, only the first {@link #getFiducialCount()} are valid */
+  public final Fiducial[] fiducials = new Fiducial[MAX_FIDUCIALS];
+
+  /** tags past MAX_FIDUCIALS are parsed into this and dropped */
+  private final Fiducial overflow = new Fiducial();
+
+  /** tags in the frame, can be more than were stored */
+  private int fiducialCount;
+
+  /** frame number, set by whoever publishes the results */
+  private long sequence;
+
+  // parser state
+  private CharSequence json;
+  private int pos;
+  private int keyStart;
+  private int keyEnd;
+
+  /** thrown for malformed input, shared so failing doesn't allocate either */
+  private static final IllegalArgumentException MALFORMED = new IllegalArgumentException("Malformed limelight json") {
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  };
+
+  /** exact powers of ten for number parsing */
+  private static final double[] POWERS_OF_TEN = new double[23];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  public LimelightResults() {
+    for (int i = 0; i < MAX_FIDUCIALS; i++) {
+      fiducials[i] = new Fiducial();
+    }
+  }
+
+  /**
+   * @return tags stored in {@link #fiducials}
+   */
+  public int getFiducialCount() {
+    return Math.min(fiducialCount, MAX_FIDUCIALS);
+  }
+
+  /**
+   * @return tags the limelight reported, including any that didn't fit
+   */
+  public int getReportedFiducialCount() {
+    return fiducialCount;
+  }
+
+  /**
+   * @return frame number, newer frames have larger numbers
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * @param sequence frame number
+   */
+  public void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  /**
+   * replace the contents with a new frame
+   * @param text limelight json dump
+   * @return false if the text couldn't be parsed, the contents are then partially overwritten
+   */
+  public boolean parse(CharSequence text) {
+    json = text;
+    pos = 0;
+
+    hasTargets = false;
+    targetHorizontalOffset = Double.NaN;
+    targetVerticalOffset = Double.NaN;
+    targetArea = Double.NaN;
+    timestamp = 0;
+    pipelineLatency = 0;
+    captureLatency = 0;
+    pipeline = 0;
+    hasBotPose = false;
+    fiducialCount = 0;
+
+    try {
+      expect('{');
+      parseResults();
+      return true;
+    } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+      return false;
+    } finally {
+      json = null;
+    }
+  }
+
+  /** members of the results object, also accepts them at the top level */
+  private void parseResults() {
+    if (skipEmpty('}')) {
+      return;
+    }
+
+    do {
+      readKey();
+
+      if (key("Results")) {
+        expect('{');
+        parseResults();
+      } else if (key("v")) {
+        hasTargets = number() > 0;
+      } else if (key("ts")) {
+        timestamp = number();
+      } else if (key("tl")) {
+        pipelineLatency = number();
+      } else if (key("cl")) {
+        captureLatency = number();
+      } else if (key("pID")) {
+        pipeline = (int) number();
+      } else if (key("botpose_wpiblue")) {
+        hasBotPose = array(botPose) == botPose.length;
+      } else if (key("Fiducial")) {
+        parseFiducials();
+      } else if (key("Retro")) {
+        parseRetro();
+      } else {
+        skipValue();
+      }
+    } while (nextMember('}'));
+  }
+
+  /** array of tag objects */
+  private void parseFiducials() {
+    expect('[');
+    if (skipEmpty(']')) {
+      return;
+    }
+
+    do {
+      Fiducial fiducial = fiducialCount < MAX_FIDUCIALS ? fiducials[fiducialCount] : overflow;
+      fiducial.clear();
+
+      expect('{');
+      if (!skipEmpty('}')) {
+        do {
+          readKey();
+
+          if (key("fID")) {
+            fiducial.id = (int) number();
+          } else if (key("tx")) {
+            fiducial.horizontalOffset = number();
+          } else if (key("ty")) {
+            fiducial.verticalOffset = number();
+          } else if (key("ta")) {
+            fiducial.area = number();
+          } else if (key("t6r_fs")) {
+            array(fiducial.robotPoseField);
+          } else if (key("t6t_rs")) {
+            array(fiducial.targetPoseRobot);
+          } else if (key("pts")) {
+            parseCorners(fiducial);
+          } else {
+            skipValue();
+          }
+        } while (nextMember('}'));
+      }
+
+      fiducialCount++;
+      offerTarget(fiducial.horizontalOffset, fiducial.verticalOffset, fiducial.area);
+    } while (nextMember(']'));
+  }
+
+  /** array of retroreflective target objects, only the largest is kept */
+  private void parseRetro() {
+    expect('[');
+    if (skipEmpty(']')) {
+      return;
+    }
+
+    do {
+      double tx = 0;
+      double ty = 0;
+      double ta = 0;
+
+      expect('{');
+      if (!skipEmpty('}')) {
+        do {
+          readKey();
+
+          if (key("tx")) {
+            tx = number();
+          } else if (key("ty")) {
+            ty = number();
+          } else if (key("ta")) {
+            ta = number();
+          } else {
+            skipValue();
+          }
+        } while (nextMember('}'));
+      }
+
+      offerTarget(tx, ty, ta);
+    } while (nextMember(']'));
+  }
+
+  /** keep the target if it's the largest so far, like the limelight picks tx and ty */
+  private void offerTarget(double horizontalOffset, double verticalOffset, double area) {
+    if (Double.isNaN(targetArea) || area > targetArea) {
+      targetHorizontalOffset = horizontalOffset;
+      targetVerticalOffset = verticalOffset;
+      targetArea = area;
+    }
+  }
+
+  /** array of [x, y] points */
+  private void parseCorners(Fiducial fiducial) {
+    fiducial.cornerCount = 0;
+
+    expect('[');
+    if (skipEmpty(']')) {
+      return;
+    }
+
+    do {
+      expect('[');
+      double x = number();
+      expect(',');
+      double y = number();
+      expect(']');
+
+      if (fiducial.cornerCount < MAX_CORNERS) {
+        fiducial.corners[fiducial.cornerCount * 2] = x;
+        fiducial.corners[fiducial.cornerCount * 2 + 1] = y;
+        fiducial.cornerCount++;
+      }
+    } while (nextMember(']'));
+  }
+
+  /**
+   * array of numbers, extra values are skipped
+   * @return number of values in the array
+   */
+  private int array(double[] out) {
+    expect('[');
+    if (skipEmpty(']')) {
+      return 0;
+    }
+
+    int count = 0;
+    do {
+      double value = number();
+      if (count < out.length) {
+        out[count] = value;
+      }
+      count++;
+    } while (nextMember(']'));
+
+    return count;
+  }
+
+  /** reads a key and the colon after it */
+  private void readKey() {
+    expect('"');
+    keyStart = pos;
+
+    while (json.charAt(pos) != '"') {
+      // keys never have escapes, but don't stop on an escaped quote
+      pos += json.charAt(pos) == '\\' ? 2 : 1;
+    }
+
+    keyEnd = pos;
+    pos++;
+    expect(':');
+  }
+
+  /** whether the last key read is name */
+  private boolean key(String name) {
+    if (keyEnd - keyStart != name.length()) {
+      return false;
+    }
+
+    for (int i = 0; i < name.length(); i++) {
+      if (json.charAt(keyStart + i) != name.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /** parse a json number in place */
+  private double number() {
+    skipWhitespace();
+
+    boolean negative = false;
+    if (json.charAt(pos) == '-') {
+      negative = true;
+      pos++;
+    }
+
+    long mantissa = 0;
+    int exponent = 0;
+    int digits = 0;
+    boolean any = false;
+
+    // integer part
+    while (pos < json.length() && isDigit(json.charAt(pos))) {
+      if (digits < 18) {
+        mantissa = mantissa * 10 + (json.charAt(pos) - '0');
+        if (mantissa != 0) {
+          digits++;
+        }
+      } else {
+        exponent++;
+      }
+      pos++;
+      any = true;
+    }
+
+    // fraction
+    if (pos < json.length() && json.charAt(pos) == '.') {
+      pos++;
+      while (pos < json.length() && isDigit(json.charAt(pos))) {
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (json.charAt(pos) - '0');
+          exponent--;
+          if (mantissa != 0) {
+            digits++;
+          }
+        }
+        pos++;
+        any = true;
+      }
+    }
+
+    if (!any) {
+      throw MALFORMED;
+    }
+
+    // exponent
+    if (pos < json.length() && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {
+      pos++;
+
+      boolean negativeExponent = false;
+      if (json.charAt(pos) == '+' || json.charAt(pos) == '-') {
+        negativeExponent = json.charAt(pos) == '-';
+        pos++;
+      }
+
+      int value = 0;
+      while (pos < json.length() && isDigit(json.charAt(pos))) {
+        value = Math.min(value * 10 + (json.charAt(pos) - '0'), 1000);
+        pos++;
+      }
+
+      exponent += negativeExponent ? -value : value;
+    }
+
+    double result = mantissa;
+    if (exponent > 0) {
+      result *= exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[exponent] : Math.pow(10, exponent);
+    } else if (exponent < 0) {
+      result /= -exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[-exponent] : Math.pow(10, -exponent);
+    }
+
+    return negative ? -result : result;
+  }
+
+  /** skip any value */
+  private void skipValue() {
+    skipWhitespace();
+    char c = json.charAt(pos);
+
+    if (c == '{') {
+      pos++;
+      if (skipEmpty('}')) {
+        return;
+      }
+      do {
+        readKey();
+        skipValue();
+      } while (nextMember('}'));
+    } else if (c == '[') {
+      pos++;
+      if (skipEmpty(']')) {
+        return;
+      }
+      do {
+        skipValue();
+      } while (nextMember(']'));
+    } else if (c == '"') {
+      pos++;
+      while (json.charAt(pos) != '"') {
+        pos += json.charAt(pos) == '\\' ? 2 : 1;
+      }
+      pos++;
+    } else if (c == 't' || c == 'f' || c == 'n') {
+      // true, false, null
+      while (pos < json.length() && Character.isLetter(json.charAt(pos))) {
+        pos++;
+      }
+    } else {
+      number();
+    }
+  }
+
+  /**
+   * after a member or element
+   * @return true if another follows, false if the container closed
+   */
+  private boolean nextMember(char close) {
+    skipWhitespace();
+    char c = json.charAt(pos++);
+
+    if (c == ',') {
+      return true;
+    }
+    if (c == close) {
+      return false;
+    }
+
+    throw MALFORMED;
+  }
+
+  /** consume close if the container is empty */
+  private boolean skipEmpty(char close) {
+    skipWhitespace();
+    if (json.charAt(pos) == close) {
+      pos++;
+      return true;
+    }
+
+    return false;
+  }
+
+  private void expect(char c) {
+    skipWhitespace();
+    if (json.charAt(pos) != c) {
+      throw MALFORMED;
+    }
+    pos++;
+  }
+
+  private void skipWhitespace() {
+    while (pos < json.length() && json.charAt(pos) <= ' ') {
+      pos++;
+    }
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+}
@@ -0,0 +1,277 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Times each phase of the robot loop (scheduler, subsystem periodics, commands, dashboard updates)
+ * into preallocated histograms and publishes p50/p99/max to the "Profiler" network table once a second,
+ * along with how many hardware reads the subsystems made per loop.
+ *
+ * <p>Everything here except the hardware read count and the overrun count is only ever touched from the
+ * main robot thread. Nothing on the hot path allocates,
+ * phases are created up front, commands get theirs when they're wrapped in a
+ * {@link frc.robot.commands.ProfiledCommand}.
+ */
+public final class LoopProfiler {
+  /** width of one histogram bucket - nanoseconds */
+  private static final long BUCKET_WIDTH = 20_000;
+
+  /** number of histogram buckets, 20 us * 2000 = 40 ms range */
+  private static final int BUCKET_COUNT = 2000;
+
+  /** loops longer than this are overruns, same as the TimedRobot period - nanoseconds */
+  private static final long LOOP_PERIOD = 20_000_000L;
+
+  /** how often percentiles are published - nanoseconds */
+  private static final long PUBLISH_PERIOD = 1_000_000_000L;
+
+  private static LoopProfiler instance;
+
+  private final NetworkTable table = NetworkTableInstance.getDefault().getTable("Profiler");
+
+  // every phase ever created, walked once a second when publishing
+  private final Phase[] phases = new Phase[128];
+  private int phaseCount = 0;
+
+  /** per-command phases by command name, commands with the same name share one */
+  private final HashMap<String, Phase> commandPhases = new HashMap<>();
+
+  private final Phase loopPhase;
+  private final Phase schedulerPhase;
+  private final Phase frameworkPhase;
+
+  private long loopStart;
+  private long lastPublish;
+
+  /** loops over the period since startup, read from other threads */
+  private volatile long overruns = 0;
+
+  // hardware reads (JNI/CAN) counted by the subsystems as they make them, notifiers included
+  private final AtomicInteger hardwareReads = new AtomicInteger();
+  private int maxHardwareReads = 0;
+  private long windowHardwareReads = 0;
+  private int windowLoops = 0;
+
+  private final DoublePublisher hardwareReadsAverage = table.getDoubleTopic("Hardware reads per loop (avg)").publish();
+  private final DoublePublisher hardwareReadsMax = table.getDoubleTopic("Hardware reads per loop (max)").publish();
+
+  private LoopProfiler() {
+    loopPhase = phase("Loop");
+    schedulerPhase = phase("Scheduler");
+    frameworkPhase = phase("Dashboard + framework");
+
+    lastPublish = System.nanoTime();
+  }
+
+  /** @return the profiler shared by the robot loop and all subsystems */
+  public static synchronized LoopProfiler getInstance() {
+    if (instance == null) {
+      instance = new LoopProfiler();
+    }
+    return instance;
+  }
+
+  /**
+   * creates a new named phase, call this once at construction and keep the result
+   * @param name name of the subtable the phase is published under
+   * @return phase used to time a section of code
+   */
+  public Phase phase(String name) {
+    if (phaseCount == phases.length) {
+      // still times the section so callers don't need to check, it just isn't published
+      DriverStation.reportWarning("Loop profiler is full, " + name + " won't be published", false);
+      return new Phase(null);
+    }
+
+    Phase phase = new Phase(name);
+    phases[phaseCount++] = phase;
+    return phase;
+  }
+
+  /**
+   * phase for a command, created the first time the name is seen
+   * @param name command name, published under "Command/name"
+   * @return phase shared by every command with this name
+   */
+  public Phase commandPhase(String name) {
+    return commandPhases.computeIfAbsent(name, key -> phase("Command/" + key));
+  }
+
+  /** call at the very start of the robot loop */
+  public void beginLoop() {
+    loopStart = System.nanoTime();
+  }
+
+  /**
+   * call right after each read that goes through JNI or the CAN bus, safe to call from any thread.
+   * reads made between loops, like on a notifier, go into the next loop's count
+   */
+  public void countHardwareRead() {
+    hardwareReads.incrementAndGet();
+  }
+
+  /**
+   * safe to call from any thread
+   * @return loops that took longer than 20 ms since startup
+   */
+  public long getOverrunCount() {
+    return overruns;
+  }
+
+  /** call right before {@code CommandScheduler.run()} */
+  public void beginScheduler() {
+    schedulerPhase.start();
+  }
+
+  /** call right after {@code CommandScheduler.run()} */
+  public void endScheduler() {
+    schedulerPhase.stop();
+  }
+
+  /**
+   * call at the very end of the robot loop, records the loop total and everything outside
+   * the scheduler (SmartDashboard, LiveWindow and Shuffleboard updates) and publishes once a second
+   */
+  public void endLoop() {
+    long now = System.nanoTime();
+    long loopTime = now - loopStart;
+
+    loopPhase.record(loopTime);
+    if (loopTime > LOOP_PERIOD) {
+      overruns++;
+    }
+    frameworkPhase.record(Math.max(0, loopTime - schedulerPhase.lastDuration));
+
+    // scheduler phase is only reset when it runs again
+    schedulerPhase.lastDuration = 0;
+
+    int reads = hardwareReads.getAndSet(0);
+    windowHardwareReads += reads;
+    windowLoops++;
+    maxHardwareReads = Math.max(maxHardwareReads, reads);
+
+    if (now - lastPublish >= PUBLISH_PERIOD) {
+      lastPublish = now;
+      publish();
+    }
+  }
+
+  /** publish percentiles for every phase and start a new window */
+  private void publish() {
+    for (int i = 0; i < phaseCount; i++) {
+      phases[i].publish();
+    }
+
+    if (windowLoops > 0) {
+      hardwareReadsAverage.set((double) windowHardwareReads / windowLoops);
+      hardwareReadsMax.set(maxHardwareReads);
+    }
+
+    windowHardwareReads = 0;
+    windowLoops = 0;
+    maxHardwareReads = 0;
+  }
+
+  /** a timed section of the robot loop with its own histogram */
+  public final class Phase {
+    private final int[] buckets = new int[BUCKET_COUNT];
+    private int count = 0;
+    private long max = 0;
+
+    private long startTime;
+    private long lastDuration;
+
+    private final DoublePublisher p50;
+    private final DoublePublisher p99;
+    private final DoublePublisher maxPublisher;
+    private final DoublePublisher countPublisher;
+
+    /**
+     * @param name subtable to publish under, null if the phase is never published
+     */
+    private Phase(String name) {
+      if (name == null) {
+        p50 = p99 = maxPublisher = countPublisher = null;
+        return;
+      }
+
+      NetworkTable subtable = table.getSubTable(name);
+
+      p50 = subtable.getDoubleTopic("p50 (ms)").publish();
+      p99 = subtable.getDoubleTopic("p99 (ms)").publish();
+      maxPublisher = subtable.getDoubleTopic("max (ms)").publish();
+      countPublisher = subtable.getDoubleTopic("samples").publish();
+    }
+
+    /** start timing this phase */
+    public void start() {
+      startTime = System.nanoTime();
+    }
+
+    /** stop timing this phase and record the duration */
+    public void stop() {
+      record(System.nanoTime() - startTime);
+    }
+
+    /** @return duration of the most recent sample - nanoseconds */
+    public long getLastDuration() {
+      return lastDuration;
+    }
+
+    /**
+     * record a duration timed elsewhere
+     * @param duration nanoseconds
+     */
+    public void record(long duration) {
+      int bucket = (int) Math.min(duration / BUCKET_WIDTH, BUCKET_COUNT - 1);
+      buckets[bucket]++;
+      count++;
+
+      max = Math.max(max, duration);
+      lastDuration = duration;
+    }
+
+    /**
+     * @param percentile 0.0 through 1.0
+     * @return upper edge of the bucket containing the percentile - milliseconds
+     */
+    private double percentile(double percentile) {
+      int target = (int) Math.ceil(percentile * count);
+      int seen = 0;
+
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        seen += buckets[i];
+        if (seen >= target) {
+          return (i + 1) * BUCKET_WIDTH / 1e6;
+        }
+      }
+
+      return BUCKET_COUNT * BUCKET_WIDTH / 1e6;
+    }
+
+    private void publish() {
+      if (count > 0) {
+        p50.set(percentile(0.50));
+        p99.set(percentile(0.99));
+        maxPublisher.set(max / 1e6);
+      }
+      countPublisher.set(count);
+
+      // clear for the next window
+      Arrays.fill(buckets, 0);
+      count = 0;
+      max = 0;
+    }
+  }
+}
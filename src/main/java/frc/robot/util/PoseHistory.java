@@ -0,0 +1,109 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Fixed size ring buffer of timestamped poses that can be sampled at any time between the oldest
+ * and newest entry. Stored as primitive arrays so adding and sampling never allocate.
+ */
+public class PoseHistory {
+  private final double[] timestamps;
+  private final double[] xs;
+  private final double[] ys;
+  private final double[] thetas;
+
+  /** index the next entry will be written to */
+  private int head = 0;
+  private int size = 0;
+
+  /**
+   * @param capacity maximum number of poses kept, oldest are overwritten
+   */
+  public PoseHistory(int capacity) {
+    timestamps = new double[capacity];
+    xs = new double[capacity];
+    ys = new double[capacity];
+    thetas = new double[capacity];
+  }
+
+  /**
+   * add a pose, timestamps must be increasing
+   * @param timestamp seconds
+   * @param x meters
+   * @param y meters
+   * @param theta radians
+   */
+  public void add(double timestamp, double x, double y, double theta) {
+    // ignore out of order samples instead of breaking the search
+    if (size > 0 && timestamp <= timestamps[index(size - 1)]) {
+      return;
+    }
+
+    timestamps[head] = timestamp;
+    xs[head] = x;
+    ys[head] = y;
+    thetas[head] = theta;
+
+    head = (head + 1) % timestamps.length;
+    size = Math.min(size + 1, timestamps.length);
+  }
+
+  /** remove every entry */
+  public void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  /**
+   * linearly interpolate the pose at a time inside the buffer
+   * @param timestamp seconds
+   * @param out array of at least 3, filled with x, y, theta
+   * @return false if the timestamp is older or newer than anything in the buffer
+   */
+  public boolean sample(double timestamp, double[] out) {
+    if (size == 0 || timestamp < timestamps[index(0)] || timestamp > timestamps[index(size - 1)]) {
+      return false;
+    }
+
+    // binary search for the first entry at or after the timestamp
+    int low = 0;
+    int high = size - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[index(mid)] < timestamp) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    int after = index(low);
+    if (low == 0 || timestamps[after] == timestamp) {
+      out[0] = xs[after];
+      out[1] = ys[after];
+      out[2] = thetas[after];
+      return true;
+    }
+
+    int before = index(low - 1);
+    double t = (timestamp - timestamps[before]) / (timestamps[after] - timestamps[before]);
+
+    out[0] = MathUtil.interpolate(xs[before], xs[after], t);
+    out[1] = MathUtil.interpolate(ys[before], ys[after], t);
+    // interpolate along the shortest way around the circle
+    out[2] = thetas[before] + MathUtil.angleModulus(thetas[after] - thetas[before]) * t;
+    return true;
+  }
+
+  /**
+   * @param i 0 is the oldest entry
+   * @return array index of the i-th oldest entry
+   */
+  private int index(int i) {
+    return (head - size + i + timestamps.length) % timestamps.length;
+  }
+}
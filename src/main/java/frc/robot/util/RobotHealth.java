@@ -0,0 +1,204 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.math.filter.LinearFilter;
+import edu.wpi.first.util.sendable.Sendable;
+import edu.wpi.first.util.sendable.SendableBuilder;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.util.Color8Bit;
+import frc.robot.subsystems.AddressableLEDSubsystem;
+import frc.robot.subsystems.AddressableLEDSubsystem.Layer;
+import frc.robot.subsystems.AddressableLEDSubsystem.Segment;
+import frc.robot.subsystems.Testable;
+import frc.robot.subsystems.Testable.Connection;
+
+import static frc.robot.Constants.HealthConstants.*;
+import static frc.robot.Constants.CANConstants.UTILIZATION_AVERAGE;
+
+/**
+ * Watches loop overruns, brownouts, battery voltage and hardware connections on a slow notifier
+ * and shows the worst problem as an alert on the driver LEDs. Nothing here runs in the robot loop.
+ *
+ * <p>Also averages CAN bus utilization for the dashboard, next to the reading from before
+ * {@link StatusFrames} slowed the spark max status frames down.
+ */
+public class RobotHealth implements Sendable {
+  /** problems the driver is shown, later ones are more serious and cover earlier ones */
+  public enum Issue {
+    LOOP_OVERRUN,
+    LOW_BATTERY,
+    DISCONNECTED,
+    BROWNOUT;
+  }
+
+  private static final Issue[] ISSUES = Issue.values();
+
+  private static final Color8Bit RED = new Color8Bit(255, 0, 0);
+  private static final Color8Bit ORANGE = new Color8Bit(255, 80, 0);
+  private static final Color8Bit WHITE = new Color8Bit(120, 120, 120);
+
+  private final AddressableLEDSubsystem leds;
+  private final List<Connection> connections = new ArrayList<>();
+
+  /** pattern shown for each issue, null to not show it */
+  private final EnumMap<Issue, LEDPattern> patterns = new EnumMap<>(Issue.class);
+
+  private final Notifier notifier;
+
+  private final Debouncer lowBattery = new Debouncer(LOW_BATTERY_TIME);
+  private final LinearFilter canUtilization = LinearFilter.movingAverage(UTILIZATION_AVERAGE);
+
+  // notifier thread only
+  private long lastOverruns;
+  private double lastUpdate;
+  private double lastBrownout = Double.NEGATIVE_INFINITY;
+  private LEDPattern shown;
+  private boolean patternsChanged = false;
+
+  // cached for the dashboard
+  private volatile Issue issue;
+  private volatile double overrunRate = 0;
+  private volatile double batteryVoltage = 0;
+  private volatile String disconnected = "";
+  private volatile double busUtilization = 0;
+
+  /**
+   * @param leds strip the alerts are shown on
+   * @param devices everything with hardware connection checks
+   */
+  public RobotHealth(AddressableLEDSubsystem leds, Testable... devices) {
+    this.leds = leds;
+
+    for (Testable device : devices) {
+      connections.addAll(device.hardwareConnections());
+    }
+
+    int length = Segment.DRIVER.length();
+    patterns.put(Issue.LOOP_OVERRUN, LEDPattern.blink(WHITE, 1.0, length));
+    patterns.put(Issue.LOW_BATTERY, LEDPattern.blink(ORANGE, 1.0, length));
+    patterns.put(Issue.DISCONNECTED, LEDPattern.chase(RED, AddressableLEDSubsystem.OFF, 16, 120, length));
+    patterns.put(Issue.BROWNOUT, LEDPattern.blink(RED, 0.25, length));
+
+    lastOverruns = LoopProfiler.getInstance().getOverrunCount();
+    lastUpdate = Timer.getFPGATimestamp();
+
+    notifier = new Notifier(this::update);
+    notifier.setName("Robot Health");
+    notifier.startPeriodic(HEALTH_PERIOD);
+  }
+
+  /**
+   * change what an issue looks like
+   * @param pattern built for the driver segment, null to not show the issue
+   */
+  public synchronized void setPattern(Issue issue, LEDPattern pattern) {
+    patterns.put(issue, pattern);
+
+    // show the new pattern on the next update
+    patternsChanged = true;
+  }
+
+  /**
+   * @return what an issue looks like, null if it isn't shown
+   */
+  public synchronized LEDPattern getPattern(Issue issue) {
+    return patterns.get(issue);
+  }
+
+  /**
+   * @return most serious current issue, null if everything is fine
+   */
+  public Issue getIssue() {
+    return issue;
+  }
+
+  /**
+   * @return names of disconnected devices, empty if everything is connected
+   */
+  public String getDisconnected() {
+    return disconnected;
+  }
+
+  /**
+   * @return CAN bus utilization from 0 to 1, averaged over the last few checks
+   */
+  public double getBusUtilization() {
+    return busUtilization;
+  }
+
+  /** check everything and update the overlay, runs on the notifier */
+  private synchronized void update() {
+    double now = Timer.getFPGATimestamp();
+
+    long overruns = LoopProfiler.getInstance().getOverrunCount();
+    if (now > lastUpdate) {
+      overrunRate = (overruns - lastOverruns) / (now - lastUpdate);
+    }
+    lastOverruns = overruns;
+    lastUpdate = now;
+
+    batteryVoltage = RobotController.getBatteryVoltage();
+    busUtilization = canUtilization.calculate(RobotController.getCANStatus().percentBusUtilization);
+
+    // brownouts are short, keep showing one for a while
+    if (RobotController.isBrownedOut()) {
+      lastBrownout = now;
+    }
+
+    StringBuilder missing = new StringBuilder();
+    for (Connection connection : connections) {
+      if (!connection.connected()) {
+        missing.append(missing.length() > 0 ? ", " : "").append(connection.getName());
+      }
+    }
+    disconnected = missing.toString();
+
+    boolean[] active = new boolean[ISSUES.length];
+    active[Issue.LOOP_OVERRUN.ordinal()] = overrunRate > MAX_OVERRUN_RATE;
+    active[Issue.LOW_BATTERY.ordinal()] = lowBattery.calculate(batteryVoltage < LOW_BATTERY_VOLTAGE);
+    active[Issue.DISCONNECTED.ordinal()] = missing.length() > 0;
+    active[Issue.BROWNOUT.ordinal()] = now - lastBrownout < BROWNOUT_HOLD_TIME;
+
+    Issue worst = null;
+    LEDPattern pattern = null;
+    for (int i = ISSUES.length - 1; i >= 0; i--) {
+      if (active[i] && patterns.get(ISSUES[i]) != null) {
+        worst = ISSUES[i];
+        pattern = patterns.get(worst);
+        break;
+      }
+    }
+    issue = worst;
+
+    // the strip only needs to hear about changes
+    if (pattern != shown || patternsChanged) {
+      shown = pattern;
+      patternsChanged = false;
+      if (pattern == null) {
+        leds.clearPattern(Segment.DRIVER, Layer.ALERT);
+      } else {
+        leds.setPattern(Segment.DRIVER, Layer.ALERT, pattern);
+      }
+    }
+  }
+
+  @Override
+  public void initSendable(SendableBuilder builder) {
+    builder.addStringProperty("Issue", () -> issue == null ? "None" : issue.toString(), null);
+    builder.addDoubleProperty("Overruns per second", () -> overrunRate, null);
+    builder.addDoubleProperty("Battery (V)", () -> batteryVoltage, null);
+    builder.addStringProperty("Disconnected", () -> disconnected, null);
+    builder.addDoubleProperty("CAN utilization", () -> busUtilization, null);
+    builder.addDoubleProperty("CAN utilization before status frames", StatusFrames::getUtilizationBefore, null);
+  }
+}
@@ -0,0 +1,134 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
+
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+
+import static frc.robot.Constants.CANConstants.*;
+import static frc.robot.Constants.DriveConstants.LEADER_POSITION_PERIOD;
+import static frc.robot.Constants.GripperConstants.ROLLER_STATUS_PERIOD;
+
+/**
+ * Status frame periods for every spark max, picked by what the robot code reads from it. Sparks
+ * send every status frame fast by default, even ones nobody reads, so followers and unused sensor
+ * frames are slowed down to free up the CAN bus.
+ *
+ * <p>Subsystems register their sparks with a role when they're created, then {@link #applyAll()}
+ * sets the periods once everything exists and records the bus utilization from before.
+ */
+public final class StatusFrames {
+  /**
+   * periods in milliseconds for status 0 (applied output, faults), status 1 (velocity, current)
+   * and status 2 (position). everything else (analog, alternate and absolute encoders) is unused
+   */
+  public enum Role {
+    /** drivetrain leaders, velocity is read every loop and position as often as odometry runs */
+    LEADER(10, 20, LEADER_POSITION_PERIOD),
+
+    /** copies a leader, nothing reads it */
+    FOLLOWER(100, 500, 500),
+
+    /** runs a mechanism, velocity and position are read every loop */
+    MECHANISM(10, 20, 20),
+
+    /** mechanism whose current is sampled for stall detection */
+    CURRENT_SENSING(10, ROLLER_STATUS_PERIOD, 500),
+
+    /** closes its own loop on the controller, only read for the dashboard */
+    TELEMETRY(50, 100, 200);
+
+    public final int status0;
+    public final int status1;
+    public final int status2;
+
+    private Role(int status0, int status1, int status2) {
+      this.status0 = status0;
+      this.status1 = status1;
+      this.status2 = status2;
+    }
+
+    /**
+     * set every status frame period on a spark
+     */
+    public void apply(CANSparkMax spark) {
+      for (PeriodicFrame frame : PeriodicFrame.values()) {
+        spark.setPeriodicFramePeriod(frame, period(frame));
+      }
+    }
+
+    /**
+     * @return milliseconds between frames
+     */
+    public int period(PeriodicFrame frame) {
+      switch (frame) {
+        case kStatus0:
+          return status0;
+        case kStatus1:
+          return status1;
+        case kStatus2:
+          return status2;
+        default:
+          return UNUSED_FRAME_PERIOD;
+      }
+    }
+  }
+
+  private static final List<CANSparkMax> sparks = new ArrayList<>();
+  private static final List<Role> roles = new ArrayList<>();
+
+  private static double utilizationBefore = Double.NaN;
+
+  private StatusFrames() {}
+
+  /**
+   * remember a spark's role, the periods are set by {@link #applyAll()}
+   */
+  public static synchronized void register(CANSparkMax spark, Role role) {
+    sparks.add(spark);
+    roles.add(role);
+  }
+
+  /**
+   * measure the bus with the default periods, then set every registered spark's periods
+   */
+  public static synchronized void applyAll() {
+    utilizationBefore = measureUtilization();
+
+    for (int i = 0; i < sparks.size(); i++) {
+      roles.get(i).apply(sparks.get(i));
+    }
+  }
+
+  /**
+   * @return bus utilization from 0 to 1 before the periods were set, NaN until {@link #applyAll()}
+   */
+  public static synchronized double getUtilizationBefore() {
+    return utilizationBefore;
+  }
+
+  /** average a few samples, a single one is noisy */
+  private static double measureUtilization() {
+    // there's no bus in simulation, and the simulations pause timing so the delay would never end
+    if (RobotBase.isSimulation()) {
+      return 0;
+    }
+
+    double total = 0;
+    for (int i = 0; i < UTILIZATION_SAMPLES; i++) {
+      total += RobotController.getCANStatus().percentBusUtilization;
+      Timer.delay(UTILIZATION_SAMPLE_PERIOD);
+    }
+
+    return total / UTILIZATION_SAMPLES;
+  }
+}
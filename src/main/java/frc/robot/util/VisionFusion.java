@@ -0,0 +1,150 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.List;
+
+import frc.robot.Limelight;
+import frc.robot.Limelight.PoseMeasurement;
+
+import static frc.robot.Constants.LimelightConstants.*;
+
+/**
+ * Merges the robot poses from every limelight into one measurement. Frames captured at about the
+ * same time are grouped, and each pose is weighted by how many tags it saw and how close they were.
+ *
+ * <p>Fusion runs on the networktables listener thread as frames arrive, so readers only pick up
+ * the latest result.
+ */
+public class VisionFusion {
+  private final List<Limelight> cameras;
+
+  /** latest frame from each camera not fused yet, null once fused. listener thread only */
+  private final PoseMeasurement[] pending;
+
+  /** latest fused pose, replaced whole */
+  private volatile PoseMeasurement fused = new PoseMeasurement(Double.NaN, Double.NaN, Double.NaN, Double.NaN, 0, Double.NaN);
+
+  /** cameras in the latest fused pose */
+  private volatile int fusedCameras = 0;
+
+  /**
+   * @param cameras every limelight on the robot
+   */
+  public VisionFusion(List<Limelight> cameras) {
+    this.cameras = cameras;
+    pending = new PoseMeasurement[cameras.size()];
+
+    for (int i = 0; i < cameras.size(); i++) {
+      int index = i;
+      cameras.get(i).setMeasurementListener(measurement -> addMeasurement(index, measurement));
+    }
+  }
+
+  /**
+   * @return every limelight being fused
+   */
+  public List<Limelight> getCameras() {
+    return cameras;
+  }
+
+  /**
+   * Gets the latest fused pose, safe to read from any thread
+   * @return a new object each time the pose changes
+   */
+  public PoseMeasurement getFusedPose() {
+    return fused;
+  }
+
+  /**
+   * @return cameras that contributed to the latest fused pose
+   */
+  public int getFusedCameraCount() {
+    return fusedCameras;
+  }
+
+  /**
+   * groups frames by capture time, fusing once every camera has reported or a group is complete
+   * @param index camera the frame came from
+   * @param measurement one frame
+   */
+  private synchronized void addMeasurement(int index, PoseMeasurement measurement) {
+    // a second frame from the same camera, or one too far after the rest, starts a new group
+    if (pending[index] != null || measurement.captureTime - oldestPending() > FUSION_WINDOW) {
+      fuse();
+    }
+
+    pending[index] = measurement;
+
+    for (PoseMeasurement frame : pending) {
+      if (frame == null) {
+        return;
+      }
+    }
+    fuse();
+  }
+
+  /** capture time of the oldest pending frame - seconds */
+  private double oldestPending() {
+    double oldest = Double.POSITIVE_INFINITY;
+    for (PoseMeasurement frame : pending) {
+      if (frame != null) {
+        oldest = Math.min(oldest, frame.captureTime);
+      }
+    }
+
+    return oldest;
+  }
+
+  /** weighted average of the pending poses, then clear them */
+  private void fuse() {
+    double totalWeight = 0;
+    double x = 0;
+    double y = 0;
+    double cos = 0;
+    double sin = 0;
+    double captureTime = 0;
+    double distance = 0;
+    int tags = 0;
+    int count = 0;
+
+    for (int i = 0; i < pending.length; i++) {
+      PoseMeasurement frame = pending[i];
+      pending[i] = null;
+
+      if (frame == null || !frame.hasPose()) {
+        continue;
+      }
+
+      // more tags and closer tags both give a better pose
+      double range = Math.max(frame.tagDistance, FUSION_MIN_DISTANCE);
+      double weight = frame.tagCount / (range * range);
+
+      totalWeight += weight;
+      x += weight * frame.x;
+      y += weight * frame.y;
+      cos += weight * Math.cos(frame.yaw);
+      sin += weight * Math.sin(frame.yaw);
+      captureTime += weight * frame.captureTime;
+      distance += weight * frame.tagDistance;
+      tags += frame.tagCount;
+      count++;
+    }
+
+    if (count == 0) {
+      return;
+    }
+
+    fused = new PoseMeasurement(
+      x / totalWeight,
+      y / totalWeight,
+      Math.atan2(sin, cos),
+      captureTime / totalWeight,
+      tags,
+      distance / totalWeight
+    );
+    fusedCameras = count;
+  }
+}
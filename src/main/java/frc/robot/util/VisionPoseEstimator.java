@@ -0,0 +1,252 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+import static frc.robot.Constants.LimelightConstants.*;
+
+/**
+ * Fuses odometry with latency-compensated vision measurements.
+ *
+ * <p>The estimate is odometry moved by a rigid correction (odometry frame to field frame). When a
+ * vision pose arrives, the odometry pose at the image capture time is looked up in a {@link PoseHistory},
+ * compared with the vision pose, and the correction is nudged towards it. Since the correction applies
+ * to the whole odometry frame, motion after the capture time is kept.
+ *
+ * <p>Vision only moves the estimate in one jump when several frames in a row agree on where the
+ * robot is: before the first pose is known, and when the estimate has drifted so far that every
+ * frame is rejected. A single misread tag can't throw the estimate off or lock it out.
+ *
+ * <p>Odometry may be added from the odometry notifier while vision is added from the main loop,
+ * so every mutating method is synchronized. The estimate itself is published through a volatile field.
+ */
+public class VisionPoseEstimator {
+  private final PoseHistory history = new PoseHistory(POSE_HISTORY_SIZE);
+
+  // correction from odometry frame to field frame
+  private double correctionX = 0;
+  private double correctionY = 0;
+  private double correctionTheta = 0;
+
+  /** whether the estimate is on the field, from a reset or frames that agreed */
+  private boolean seeded = false;
+
+  // correction the last measurement that didn't fit the estimate implies, and how many in a row agreed
+  private double candidateX = 0;
+  private double candidateY = 0;
+  private double candidateTheta = 0;
+  private int candidateCount = 0;
+
+  /** capture time of the last measurement used, used to ignore repeated frames */
+  private double lastVisionTimestamp = Double.NEGATIVE_INFINITY;
+
+  // reused to sample the history without allocating
+  private final double[] sample = new double[3];
+
+  // latest odometry pose, used to refresh the estimate after a correction
+  private double odometryX = 0;
+  private double odometryY = 0;
+  private double odometryTheta = 0;
+
+  private volatile Pose2d estimate = new Pose2d();
+
+  private int acceptedCount = 0;
+  private int rejectedCount = 0;
+
+  /**
+   * record a new odometry pose and update the estimate
+   * @param timestamp FPGA time the odometry was sampled - seconds
+   * @param odometry pose from odometry
+   */
+  public synchronized void addOdometry(double timestamp, Pose2d odometry) {
+    odometryX = odometry.getX();
+    odometryY = odometry.getY();
+    odometryTheta = odometry.getRotation().getRadians();
+
+    history.add(timestamp, odometryX, odometryY, odometryTheta);
+    publishEstimate();
+  }
+
+  /**
+   * odometry heading at a past time, for latency compensation
+   * @param timestamp FPGA time - seconds
+   * @return radians, NaN if the time isn't in the history
+   */
+  public synchronized double getOdometryHeadingAt(double timestamp) {
+    return history.sample(timestamp, sample) ? sample[2] : Double.NaN;
+  }
+
+  /**
+   * apply a vision pose measured at a past time
+   * @param x field x - meters
+   * @param y field y - meters
+   * @param theta field heading - radians
+   * @param timestamp FPGA time the image was captured - seconds
+   * @return whether the measurement was accepted
+   */
+  public synchronized boolean addVisionMeasurement(double x, double y, double theta, double timestamp) {
+    // same camera frame as last time
+    if (timestamp <= lastVisionTimestamp) {
+      return false;
+    }
+
+    if (!isPlausible(x, y, theta) || !history.sample(timestamp, sample)) {
+      rejectedCount++;
+      return false;
+    }
+
+    lastVisionTimestamp = timestamp;
+
+    // estimated pose at capture time
+    double cos = Math.cos(correctionTheta);
+    double sin = Math.sin(correctionTheta);
+    double estimateX = correctionX + cos * sample[0] - sin * sample[1];
+    double estimateY = correctionY + sin * sample[0] + cos * sample[1];
+    double estimateTheta = sample[2] + correctionTheta;
+
+    double errorX = x - estimateX;
+    double errorY = y - estimateY;
+    double errorTheta = MathUtil.angleModulus(theta - estimateTheta);
+
+    double translationGain = VISION_TRANSLATION_GAIN;
+    double rotationGain = VISION_ROTATION_GAIN;
+
+    if (!seeded || Math.hypot(errorX, errorY) > VISION_MAX_ERROR) {
+      // nowhere yet, or too far from where we think we are. jump only once enough frames agree
+      if (!trackCandidate(x, y, theta, seeded ? VISION_RESEED_FRAMES : VISION_SEED_FRAMES)) {
+        rejectedCount++;
+        return false;
+      }
+
+      correctionX = candidateX;
+      correctionY = candidateY;
+      correctionTheta = candidateTheta;
+      candidateCount = 0;
+      seeded = true;
+
+      acceptedCount++;
+      return true;
+    }
+
+    // the estimate is fine, forget any frames that disagreed
+    candidateCount = 0;
+
+    // corrected pose at capture time
+    double targetX = estimateX + errorX * translationGain;
+    double targetY = estimateY + errorY * translationGain;
+    double targetTheta = estimateTheta + errorTheta * rotationGain;
+
+    // solve for the correction that maps the odometry pose at capture time onto the corrected pose
+    correctionTheta = MathUtil.angleModulus(targetTheta - sample[2]);
+    cos = Math.cos(correctionTheta);
+    sin = Math.sin(correctionTheta);
+    correctionX = targetX - (cos * sample[0] - sin * sample[1]);
+    correctionY = targetY - (sin * sample[0] + cos * sample[1]);
+
+    acceptedCount++;
+
+    // the next odometry update publishes the corrected estimate
+    return true;
+  }
+
+  /**
+   * compare a measurement that doesn't fit the estimate with the ones before it, sample holds the
+   * odometry pose at capture time
+   * @param frames measurements in a row that have to agree
+   * @return whether enough agreed, the candidate correction is then the one to use
+   */
+  private boolean trackCandidate(double x, double y, double theta, int frames) {
+    if (candidateCount > 0) {
+      // where the previous frames put the robot at this capture time
+      double cos = Math.cos(candidateTheta);
+      double sin = Math.sin(candidateTheta);
+      double predictedX = candidateX + cos * sample[0] - sin * sample[1];
+      double predictedY = candidateY + sin * sample[0] + cos * sample[1];
+      double predictedTheta = sample[2] + candidateTheta;
+
+      boolean agrees = Math.hypot(x - predictedX, y - predictedY) < VISION_SEED_TOLERANCE
+        && Math.abs(MathUtil.angleModulus(theta - predictedTheta)) < VISION_SEED_ANGLE_TOLERANCE;
+
+      candidateCount = agrees ? candidateCount + 1 : 1;
+    } else {
+      candidateCount = 1;
+    }
+
+    // correction that puts the odometry pose at capture time exactly on this measurement
+    candidateTheta = MathUtil.angleModulus(theta - sample[2]);
+    double cos = Math.cos(candidateTheta);
+    double sin = Math.sin(candidateTheta);
+    candidateX = x - (cos * sample[0] - sin * sample[1]);
+    candidateY = y - (sin * sample[0] + cos * sample[1]);
+
+    return candidateCount >= frames;
+  }
+
+  /**
+   * move the estimate to a known pose, e.g. at the start of a match
+   * @param pose field pose the robot is currently at
+   */
+  public synchronized void resetPose(Pose2d pose) {
+    correctionTheta = MathUtil.angleModulus(pose.getRotation().getRadians() - odometryTheta);
+    double cos = Math.cos(correctionTheta);
+    double sin = Math.sin(correctionTheta);
+    correctionX = pose.getX() - (cos * odometryX - sin * odometryY);
+    correctionY = pose.getY() - (sin * odometryX + cos * odometryY);
+
+    seeded = true;
+    candidateCount = 0;
+    publishEstimate();
+  }
+
+  /**
+   * forget all odometry history, call whenever odometry itself is reset
+   */
+  public synchronized void clearHistory() {
+    history.clear();
+  }
+
+  /** @return fused field pose, safe to read from any thread */
+  public Pose2d getEstimatedPosition() {
+    return estimate;
+  }
+
+  /** @return number of vision measurements applied */
+  public int getAcceptedCount() {
+    return acceptedCount;
+  }
+
+  /** @return number of vision measurements thrown out */
+  public int getRejectedCount() {
+    return rejectedCount;
+  }
+
+  /** reject measurements that can't be a robot on the field */
+  private boolean isPlausible(double x, double y, double theta) {
+    if (!Double.isFinite(x) || !Double.isFinite(y) || !Double.isFinite(theta)) {
+      return false;
+    }
+
+    // limelight sends all zeros when it has no pose
+    if (x == 0 && y == 0) {
+      return false;
+    }
+
+    return x >= 0 && x <= FIELD_LENGTH && y >= 0 && y <= FIELD_WIDTH;
+  }
+
+  private void publishEstimate() {
+    double cos = Math.cos(correctionTheta);
+    double sin = Math.sin(correctionTheta);
+
+    estimate = new Pose2d(
+      correctionX + cos * odometryX - sin * odometryY,
+      correctionY + sin * odometryX + cos * odometryY,
+      new Rotation2d(odometryTheta + correctionTheta)
+    );
+  }
+}
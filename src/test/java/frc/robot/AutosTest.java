@@ -0,0 +1,155 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.commands.TracedCommand;
+import frc.robot.sim.SimulatedRobot;
+import frc.robot.subsystems.DriveSystem;
+import frc.robot.subsystems.LiftSystem;
+import frc.robot.trajectory.AutoTrajectories;
+
+import static frc.robot.Constants.AutoConstants.*;
+import static frc.robot.Constants.DriveConstants.DISTANCE_TOLERANCE;
+import static frc.robot.Constants.DriveConstants.ROTATION_TOLERANCE;
+import static frc.robot.Constants.LiftConstants.LOW_POSITION;
+import static frc.robot.Constants.LiftConstants.TOLERANCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+/**
+ * Runs every autonomous routine headless against the simulation, checks where the robot and the
+ * arm end up and that the simulation runs at least MIN_SPEEDUP times faster than real time.
+ * Failures report the match time and how long each step took.
+ */
+class AutosTest {
+  /** seconds */
+  private static final double AUTO_LENGTH = 15.0;
+
+  /** simulated seconds per wall clock second */
+  private static final double MIN_SPEEDUP = 50;
+
+  /** meters, the sim has no charge station so balancing holds wherever the robot stopped */
+  private static final double BALANCE_TOLERANCE = 0.5;
+
+  /** where the tests leave the robot before each auto, autos that move reset to their own start */
+  private static final Pose2d TEST_START = BLUE_5_START;
+
+  /**
+   * @return auto name, where it ends, meters it can end from there, and whether it finishes
+   * before the period ends
+   */
+  static Stream<Arguments> autos() {
+    SimulatedRobot.get();
+
+    Map<String, Trajectory> trajectories = AutoTrajectories.generateAll();
+    Pose2d balanceStart = DriverStation.getAlliance() == Alliance.Red ? RED_5_START : BLUE_5_START;
+
+    return Stream.of(
+      // balance runs until the period ends
+      arguments("Back up and balance", balanceStart.transformBy(new Transform2d(new Translation2d(1.5, 0), new Rotation2d())), BALANCE_TOLERANCE, false),
+      arguments("Do nothing", TEST_START, DISTANCE_TOLERANCE, true),
+      arguments("2-Side Blue Leave", end(BLUE_2_START, trajectories.get(AutoTrajectories.LEFT_SIDE_BLUE)), DISTANCE_TOLERANCE, true),
+      arguments("8-Side Blue Leave", end(BLUE_8_START, trajectories.get(AutoTrajectories.RIGHT_SIDE_BLUE)), DISTANCE_TOLERANCE, true),
+      arguments("2-Side Red Leave", end(RED_2_START, trajectories.get(AutoTrajectories.LEFT_SIDE_RED)), DISTANCE_TOLERANCE, true),
+      arguments("8-Side Red Leave", end(RED_8_START, trajectories.get(AutoTrajectories.RIGHT_SIDE_RED)), DISTANCE_TOLERANCE, true)
+    );
+  }
+
+  /** trajectories are relative to the pose they start from */
+  private static Pose2d end(Pose2d start, Trajectory trajectory) {
+    Pose2d trajectoryEnd = trajectory.sample(trajectory.getTotalTimeSeconds()).poseMeters;
+    return start.transformBy(new Transform2d(trajectory.getInitialPose(), trajectoryEnd));
+  }
+
+  @AfterEach
+  void stop() {
+    // stop whatever was left running
+    CommandScheduler.getInstance().cancelAll();
+    TracedCommand.setListener(null);
+  }
+
+  @Test
+  void everyAutoIsChecked() {
+    Set<String> checked = autos().map(arguments -> (String) arguments.get()[0]).collect(Collectors.toSet());
+    assertEquals(SimulatedRobot.get().getAutos().keySet(), checked);
+  }
+
+  @ParameterizedTest
+  @MethodSource("autos")
+  void endsWhereExpected(String name, Pose2d expectedEnd, double tolerance, boolean finishes) {
+    RobotContainer container = SimulatedRobot.get();
+    DriveSystem drive = container.getDriveSystem();
+    LiftSystem lift = container.getLiftSystem();
+
+    Command auto = container.getAutos().get(name);
+    assertNotNull(auto, name);
+
+    CommandScheduler.getInstance().cancelAll();
+    drive.resetPose(TEST_START);
+    lift.setSimulatedPosition(LOW_POSITION);
+
+    List<String> steps = new ArrayList<>();
+    TracedCommand.setListener(
+      (step, start, end, interrupted) -> steps.add(
+        String.format("%s %.2f s%s", step, end - start, interrupted ? " (interrupted)" : "")
+      )
+    );
+
+    double start = SimulatedRobot.now();
+    long wallStart = System.nanoTime();
+
+    boolean finished = SimulatedRobot.runUntilFinished(auto, AUTO_LENGTH);
+
+    double matchTime = SimulatedRobot.now() - start;
+    double wallTime = (System.nanoTime() - wallStart) / 1e9;
+
+    Pose2d end = drive.getSimulatedPose();
+    String trace = String.format("%s after %.2f s: %s", name, matchTime, String.join(", ", steps));
+
+    assertEquals(finishes, finished, trace);
+
+    assertTrue(
+      end.getTranslation().getDistance(expectedEnd.getTranslation()) < tolerance,
+      String.format("ended at (%.2f, %.2f), expected (%.2f, %.2f). %s", end.getX(), end.getY(), expectedEnd.getX(), expectedEnd.getY(), trace)
+    );
+    assertTrue(
+      Math.abs(end.getRotation().minus(expectedEnd.getRotation()).getRadians()) < ROTATION_TOLERANCE,
+      String.format("ended facing %.1f deg, expected %.1f deg. %s", end.getRotation().getDegrees(), expectedEnd.getRotation().getDegrees(), trace)
+    );
+    assertEquals(LOW_POSITION, lift.getSimulatedPosition(), TOLERANCE, "arm position. " + trace);
+
+    // "Do nothing" ends on its first loop, too short to time
+    if (matchTime > 1.0) {
+      assertTrue(
+        matchTime / wallTime >= MIN_SPEEDUP,
+        String.format("%.2f s of match in %.3f s, %.0fx real time", matchTime, wallTime, matchTime / wallTime)
+      );
+    }
+  }
+}
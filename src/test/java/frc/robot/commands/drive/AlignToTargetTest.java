@@ -0,0 +1,128 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands.drive;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Limelight;
+import frc.robot.RobotContainer;
+import frc.robot.sim.SimulatedRobot;
+import frc.robot.subsystems.DriveSystem;
+
+import static frc.robot.Constants.DriveConstants.TURN_TOLERANCE;
+import static frc.robot.Constants.LimelightConstants.ROBOT_TO_CAMERA;
+import static frc.robot.Constants.LimelightConstants.SIM_CAPTURE_LATENCY;
+import static frc.robot.Constants.LimelightConstants.SIM_PIPELINE_LATENCY;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Points away from a tag and aligns to it against the simulated limelight. Checks the turn takes
+ * about as long as the same turn without a camera, so the loop closes on the gyro instead of
+ * waiting on frames, and that it stays aligned. The residual is measured from the true pose, so it
+ * includes camera noise and latency.
+ */
+class AlignToTargetTest {
+  /** seconds each alignment is watched for, long enough to see it settle after finishing */
+  private static final double ALIGN_WINDOW = 3.0;
+
+  /**
+   * seconds an alignment can take past its turn profile: a frame's latency before the goal is known,
+   * a frame or two dropped and settling
+   */
+  private static final double ALIGN_OVERHEAD = 2 * (SIM_PIPELINE_LATENCY + SIM_CAPTURE_LATENCY) + 0.25;
+
+  /** blue grid center tag, in front of the camera at the start pose */
+  private static final int TAG = 7;
+
+  /** meters, field pose every alignment starts from, camera faces the blue grid */
+  private static final Pose2d START = new Pose2d(3.0, 2.75, new Rotation2d());
+
+  private static Translation3d tag;
+
+  @BeforeAll
+  static void loadTag() throws IOException {
+    tag = AprilTagFieldLayout.loadFromResource(AprilTagFields.k2023ChargedUp.m_resourceFile)
+      .getTagPose(TAG).orElseThrow().getTranslation();
+  }
+
+  @AfterEach
+  void stop() {
+    CommandScheduler.getInstance().cancelAll();
+  }
+
+  @ParameterizedTest
+  @ValueSource(doubles = { 10, -20, 25 })
+  void pointsTheCameraAtTheTag(double degrees) {
+    RobotContainer container = SimulatedRobot.get();
+    DriveSystem drive = container.getDriveSystem();
+    Limelight limelight = container.getLimelight();
+
+    CommandScheduler.getInstance().cancelAll();
+    SimulatedRobot.idle(1.0);
+    drive.resetPose(new Pose2d(START.getTranslation(), Rotation2d.fromDegrees(degrees)));
+
+    // let a few frames from the new pose arrive
+    SimulatedRobot.idle(0.2);
+
+    Command align = new AlignToTarget(drive, limelight);
+    double tolerance = Math.toDegrees(TURN_TOLERANCE);
+
+    // the tag is straight ahead of the start pose, so the turn is back by the same angle
+    double profileTime = new TrapezoidProfile(
+      drive.getTurnConstraints(),
+      new TrapezoidProfile.State(Math.toRadians(Math.abs(degrees)), 0),
+      new TrapezoidProfile.State(0, 0)
+    ).totalTime();
+
+    double start = SimulatedRobot.now();
+    double finished = Double.NaN;
+    double settled = 0;
+    double error = Double.NaN;
+
+    align.schedule();
+    while (SimulatedRobot.now() - start < ALIGN_WINDOW) {
+      SimulatedRobot.step();
+
+      double time = SimulatedRobot.now() - start;
+      if (!align.isScheduled() && Double.isNaN(finished)) {
+        finished = time;
+      }
+
+      // ground truth bearing from the camera axis to the tag
+      Pose3d camera = new Pose3d(drive.getSimulatedPose()).transformBy(ROBOT_TO_CAMERA);
+      Translation3d relative = tag.minus(camera.getTranslation()).rotateBy(camera.getRotation().unaryMinus());
+      error = Math.toDegrees(Math.atan2(relative.getY(), relative.getX()));
+
+      if (Math.abs(error) > tolerance) {
+        settled = time;
+      }
+    }
+
+    String measured = String.format(
+      "finished %.2f s, profile %.2f s, settled %.2f s, residual %.2f deg, camera latency %.1f ms full frame %.1f ms cropped",
+      finished, profileTime, settled, error, limelight.getAverageLatency(false), limelight.getAverageLatency(true)
+    );
+
+    assertFalse(Double.isNaN(finished), "alignment didn't finish in " + ALIGN_WINDOW + " s. " + measured);
+    assertTrue(finished < profileTime + ALIGN_OVERHEAD, measured);
+    assertTrue(settled <= finished, measured);
+    assertTrue(Math.abs(error) < tolerance, measured);
+  }
+}
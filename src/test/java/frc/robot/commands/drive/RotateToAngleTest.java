@@ -0,0 +1,101 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands.drive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.sim.SimulatedRobot;
+import frc.robot.subsystems.DriveSystem;
+
+import static frc.robot.Constants.DriveConstants.TURN_TOLERANCE;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Turns in place against the drivetrain simulation and checks the turn finishes shortly after its
+ * profile does, never swings more than TURN_TOLERANCE past the goal and stays inside it.
+ */
+class RotateToAngleTest {
+  /** seconds each turn is watched for, long enough to see it settle after finishing */
+  private static final double TURN_WINDOW = 3.0;
+
+  /** seconds a turn can take past the end of its profile to settle */
+  private static final double SETTLE_TIME = 0.25;
+
+  @AfterEach
+  void stop() {
+    CommandScheduler.getInstance().cancelAll();
+  }
+
+  @ParameterizedTest
+  @ValueSource(doubles = { 40, 90, 180 })
+  void settlesOnTheGoal(double degrees) {
+    DriveSystem drive = SimulatedRobot.get().getDriveSystem();
+
+    // come to rest, then start from the same place every time
+    CommandScheduler.getInstance().cancelAll();
+    SimulatedRobot.idle(1.0);
+    drive.resetPose(new Pose2d());
+
+    Command turn = new RotateToAngle(Rotation2d.fromDegrees(degrees), drive);
+    double tolerance = Math.toDegrees(TURN_TOLERANCE);
+
+    // fastest the drivetrain can make this turn
+    double profileTime = new TrapezoidProfile(
+      drive.getTurnConstraints(),
+      new TrapezoidProfile.State(Math.toRadians(degrees), 0),
+      new TrapezoidProfile.State(0, 0)
+    ).totalTime();
+
+    double start = SimulatedRobot.now();
+    double finished = Double.NaN;
+    double settled = 0;
+    double overshoot = 0;
+    double error = degrees;
+
+    turn.schedule();
+    while (SimulatedRobot.now() - start < TURN_WINDOW) {
+      SimulatedRobot.step();
+
+      double time = SimulatedRobot.now() - start;
+      if (!turn.isScheduled() && Double.isNaN(finished)) {
+        finished = time;
+      }
+
+      // ground truth heading, positive error is short of the goal
+      double heading = drive.getSimulatedPose().getRotation().getDegrees();
+      error = Math.signum(degrees) * MathUtil.inputModulus(degrees - heading, -180, 180);
+
+      // close to the goal, so the error can't have wrapped around
+      if (Math.abs(error) < 90) {
+        overshoot = Math.max(overshoot, -error);
+      }
+
+      if (Math.abs(error) > tolerance) {
+        settled = time;
+      }
+    }
+
+    assertFalse(Double.isNaN(finished), "turn didn't finish in " + TURN_WINDOW + " s");
+    assertTrue(
+      finished < profileTime + SETTLE_TIME,
+      String.format("finished after %.2f s, profile takes %.2f s", finished, profileTime)
+    );
+    assertTrue(
+      settled <= finished,
+      String.format("left the tolerance at %.2f s after finishing at %.2f s", settled, finished)
+    );
+    assertTrue(overshoot < tolerance, String.format("overshot by %.2f deg", overshoot));
+    assertTrue(Math.abs(error) < tolerance, String.format("ended %.2f deg from the goal", error));
+  }
+}
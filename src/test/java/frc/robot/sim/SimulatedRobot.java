@@ -0,0 +1,127 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.sim;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.RobotContainer;
+
+/**
+ * The whole robot against the HAL simulation, shared by every test that needs it. The HAL, the
+ * spark max simulations and the notifiers can only be set up once per JVM, so the container is
+ * built on first use and reused. Tests put back anything they change.
+ *
+ * <p>Simulated time is paused and stepped by hand one robot loop at a time, so nothing waits on the
+ * wall clock and the tests run as fast as the CPU allows.
+ */
+public final class SimulatedRobot {
+  /** seconds, same as TimedRobot */
+  public static final double LOOP_PERIOD = 0.02;
+
+  private static RobotContainer container;
+
+  /**
+   * @return the robot, built in enabled autonomous the first time
+   */
+  public static synchronized RobotContainer get() {
+    if (container == null) {
+      if (!HAL.initialize(500, 0)) {
+        throw new IllegalStateException("Failed to initialize the HAL");
+      }
+
+      // simulated time only moves when stepped
+      SimHooks.pauseTiming();
+      enableAutonomous();
+
+      container = new RobotContainer();
+    }
+
+    return container;
+  }
+
+  /**
+   * @return simulated seconds
+   */
+  public static double now() {
+    return Timer.getFPGATimestamp();
+  }
+
+  /** run one robot loop */
+  public static void step() {
+    DriverStationSim.notifyNewData();
+    CommandScheduler.getInstance().run();
+    SimHooks.stepTiming(LOOP_PERIOD);
+  }
+
+  /** run the scheduler for some simulated time */
+  public static void idle(double seconds) {
+    double start = now();
+    while (now() - start < seconds) {
+      step();
+    }
+  }
+
+  /**
+   * schedule a command and run the scheduler until it ends
+   * @param timeout simulated seconds to give up after
+   * @return whether the command ended on its own in time
+   */
+  public static boolean runUntilFinished(Command command, double timeout) {
+    double start = now();
+
+    command.schedule();
+    while (command.isScheduled() && now() - start < timeout) {
+      step();
+    }
+
+    return !command.isScheduled();
+  }
+
+  /**
+   * run the scheduler for some simulated time
+   * @return average scheduler run time - microseconds
+   */
+  public static double averageLoopTime(double seconds) {
+    double start = now();
+    long total = 0;
+    int loops = 0;
+
+    while (now() - start < seconds) {
+      DriverStationSim.notifyNewData();
+
+      long loopStart = System.nanoTime();
+      CommandScheduler.getInstance().run();
+      total += System.nanoTime() - loopStart;
+      loops++;
+
+      SimHooks.stepTiming(LOOP_PERIOD);
+    }
+
+    return total / 1000.0 / loops;
+  }
+
+  /** put the simulated driver station in enabled autonomous */
+  private static void enableAutonomous() {
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setAutonomous(true);
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.notifyNewData();
+
+    // the driver station thread picks up new data asynchronously
+    long deadline = System.nanoTime() + 1_000_000_000L;
+    while (!DriverStation.isEnabled() && System.nanoTime() < deadline) {
+      Thread.onSpinWait();
+    }
+  }
+
+  private SimulatedRobot() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+}
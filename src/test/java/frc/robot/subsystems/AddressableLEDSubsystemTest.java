@@ -0,0 +1,91 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import java.util.EnumMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.sim.SimulatedRobot;
+import frc.robot.subsystems.AddressableLEDSubsystem.ColorType;
+import frc.robot.util.LEDPattern;
+import frc.robot.util.RobotHealth;
+import frc.robot.util.RobotHealth.Issue;
+
+import static frc.robot.Constants.LEDConstants.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Holds an LED color like the operator's X button and checks the strip is only pushed when the
+ * frame changes, and that the binding adds less to the loop than repainting from HSV every loop
+ * used to cost on its own.
+ */
+class AddressableLEDSubsystemTest {
+  /** seconds each case is run for */
+  private static final double LED_WINDOW = 5.0;
+
+  private final EnumMap<Issue, LEDPattern> alerts = new EnumMap<>(Issue.class);
+
+  @BeforeEach
+  void hideAlerts() {
+    // health alerts animate on the same strip, and simulated devices don't all report a connection
+    RobotHealth health = SimulatedRobot.get().getHealth();
+    for (Issue issue : Issue.values()) {
+      alerts.put(issue, health.getPattern(issue));
+      health.setPattern(issue, null);
+    }
+  }
+
+  @AfterEach
+  void stop() {
+    CommandScheduler.getInstance().cancelAll();
+    alerts.forEach(SimulatedRobot.get().getHealth()::setPattern);
+  }
+
+  @Test
+  void onlyPushesChangedFrames() {
+    AddressableLEDSubsystem leds = SimulatedRobot.get().getLEDs();
+
+    CommandScheduler.getInstance().cancelAll();
+    SimulatedRobot.idle(1.0);
+
+    long frames = leds.getFramesPushed();
+    double idle = SimulatedRobot.averageLoopTime(LED_WINDOW);
+    long idlePushed = leds.getFramesPushed() - frames;
+
+    // same as holding the operator's X button
+    Command color = leds.HumanColor(ColorType.YELLOW);
+    frames = leds.getFramesPushed();
+
+    color.schedule();
+    double held = SimulatedRobot.averageLoopTime(LED_WINDOW);
+    long heldPushed = leds.getFramesPushed() - frames;
+    color.cancel();
+
+    // the old humanColorMethod, minus LED.setData on the full strip
+    AddressableLEDBuffer buffer = new AddressableLEDBuffer(LENGTH);
+    int loops = (int) (LED_WINDOW / SimulatedRobot.LOOP_PERIOD);
+    long start = System.nanoTime();
+    for (int loop = 0; loop < loops; loop++) {
+      for (int i = DRIVER_START_RANGE; i < buffer.getLength(); i++) {
+        buffer.setHSV(i, YELLOW_H, YELLOW_S, YELLOW_V);
+      }
+    }
+    double repaint = (System.nanoTime() - start) / 1000.0 / loops;
+
+    assertEquals(0, idlePushed, "frames pushed with nothing changing");
+    assertEquals(1, heldPushed, "frames pushed holding one color");
+    assertTrue(
+      held - idle < repaint,
+      String.format("loop time %.1f us idle, %.1f us holding a color, repainting cost %.1f us", idle, held, repaint)
+    );
+  }
+}
@@ -0,0 +1,167 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import edu.wpi.first.wpilibj.simulation.XboxControllerSim;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.sim.SimulatedRobot;
+import frc.robot.subsystems.LiftSystem.ControlMode;
+
+import static frc.robot.Constants.LiftConstants.*;
+import static frc.robot.Constants.OperatorConstants.OP_CONTROLLER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the lift commands against the arm simulation. Smart motion moves aren't covered, they run
+ * on the sparks and REVPhysicsSim doesn't model it, only how they start is.
+ *
+ * <p>The side tests lift at full speed with the operator's stick and one side of the arm loaded
+ * more than the other, and check how far apart the motor encoders get.
+ */
+class LiftSystemTest {
+  /** seconds each move is given to finish */
+  private static final double LIFT_WINDOW = 4.0;
+
+  /** volts, about 1.4 kg on one end of the arm */
+  private static final double SIDE_LOAD = 0.5;
+
+  /** volts, half of what one motor can give, like a side losing its motor partway through a lift */
+  private static final double HEAVY_SIDE_LOAD = 6.0;
+
+  private final XboxControllerSim operator = new XboxControllerSim(OP_CONTROLLER);
+
+  private LiftSystem lift;
+  private ControlMode previousMode;
+
+  @BeforeEach
+  void start() {
+    lift = SimulatedRobot.get().getLiftSystem();
+    previousMode = lift.getControlMode();
+
+    CommandScheduler.getInstance().cancelAll();
+  }
+
+  @AfterEach
+  void stop() {
+    operator.setLeftY(0);
+    CommandScheduler.getInstance().cancelAll();
+
+    lift.setControlMode(previousMode);
+    lift.setSynchronized(true);
+    lift.setSimulatedSideLoad(0);
+    lift.setSimulatedPosition(LOW_POSITION);
+    lift.clearSyncFault();
+  }
+
+  /** mode, preset name, absolute encoder position the move starts from and goes to */
+  static Stream<Arguments> moves() {
+    Stream.Builder<Arguments> moves = Stream.builder();
+    for (ControlMode mode : new ControlMode[] { ControlMode.BANG_BANG, ControlMode.PROFILED }) {
+      moves.add(Arguments.of(mode, "top", LOW_POSITION, TOP_POSITION));
+      moves.add(Arguments.of(mode, "mid", LOW_POSITION, MID_POSITION));
+      moves.add(Arguments.of(mode, "low", TOP_POSITION, LOW_POSITION));
+    }
+    return moves.build();
+  }
+
+  @ParameterizedTest
+  @MethodSource("moves")
+  void commandReachesPreset(ControlMode mode, String preset, double startPosition, double goal) {
+    lift.setControlMode(mode);
+    lift.setSimulatedPosition(startPosition);
+
+    Command move = lift.liftArmsToPosition(goal);
+
+    double start = SimulatedRobot.now();
+    boolean finished = SimulatedRobot.runUntilFinished(move, LIFT_WINDOW);
+    double time = SimulatedRobot.now() - start;
+    double error = lift.getSimulatedPosition() - goal;
+
+    String measured = String.format("%s to %s: finished %s after %.2f s, error %.3f", mode, preset, finished, time, error);
+    assertTrue(finished, measured);
+
+    // the simulation moves the arm once more after the command sees it arrive
+    assertTrue(Math.abs(error) < 2 * TOLERANCE, measured);
+  }
+
+  @Test
+  void syncKeepsTheSidesTogether() {
+    double unsynced = fullSpeedLift(false, SIDE_LOAD);
+    assertFalse(lift.hasSyncFault(), "unsynchronized lift faulted");
+
+    double synced = fullSpeedLift(true, SIDE_LOAD);
+    assertFalse(lift.hasSyncFault(), "synchronized lift faulted");
+
+    String measured = String.format("max side error at full speed: %.4f unsynchronized, %.4f synchronized", unsynced, synced);
+    assertTrue(synced < unsynced, measured);
+
+    // a normal load stays where the fault would clear itself
+    assertTrue(synced < SYNC_CLEAR_THRESHOLD, measured);
+  }
+
+  @Test
+  void heavyImbalanceFaults() {
+    double error = fullSpeedLift(true, HEAVY_SIDE_LOAD);
+
+    assertTrue(lift.hasSyncFault(), String.format("max side error %.4f with %.1f V on one side", error, HEAVY_SIDE_LOAD));
+  }
+
+  @Test
+  void smartMotionKeepsTheSideError() {
+    fullSpeedLift(false, SIDE_LOAD);
+    double sideError = lift.getSideError();
+
+    // the move seeds the motor encoders from the absolute encoder when it's scheduled
+    lift.setControlMode(ControlMode.SMART_MOTION);
+    lift.liftArmsToPosition(LOW_POSITION).schedule();
+
+    // seeding can't make the sides look level
+    assertEquals(sideError, lift.getSideError(), 1e-9);
+  }
+
+  /**
+   * lift from the bottom with the operator's stick all the way up, until the arm passes the top
+   * preset or the fault stops it
+   * @param volts extra load on motor two's side
+   * @return largest side error - arm rotations
+   */
+  private double fullSpeedLift(boolean synced, double volts) {
+    CommandScheduler.getInstance().cancelAll();
+    lift.setSynchronized(synced);
+    lift.setSimulatedSideLoad(volts);
+    lift.setSimulatedPosition(LOW_POSITION);
+    lift.clearSyncFault();
+
+    // the default command drives the lift from the stick, up is negative
+    operator.setLeftY(-1);
+
+    double start = SimulatedRobot.now();
+    double maxError = 0;
+    while (SimulatedRobot.now() - start < LIFT_WINDOW && lift.getPosition() > TOP_POSITION && !lift.hasSyncFault()) {
+      SimulatedRobot.step();
+      maxError = Math.max(maxError, Math.abs(lift.getSideError()));
+    }
+
+    operator.setLeftY(0);
+
+    if (!lift.hasSyncFault()) {
+      assertTrue(lift.getPosition() <= TOP_POSITION, "arm only got to " + lift.getPosition());
+    }
+
+    return maxError;
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Commands;
+import frc.robot.sim.SimulatedRobot;
+import frc.robot.subsystems.DriveSystem.OdometrySnapshot;
+
+import static frc.robot.Constants.DriveConstants.*;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Weaves the simulated robot across the field with odometry sampled once per loop and on the
+ * odometry notifier, and compares every odometry update with the drivetrain sim's pose.
+ *
+ * <p>The drivetrain sim is stepped every SIM_SUBSTEP between loops so the notifier reads new
+ * positions each time, like encoders on the robot.
+ */
+class OdometryRateTest {
+  /** seconds driven in each mode */
+  private static final double DRIVE_WINDOW = 10.0;
+
+  /** volts, average of the two sides */
+  private static final double FORWARD_VOLTAGE = 6.0;
+
+  /** volts added to one side and taken from the other at the peak of each weave */
+  private static final double WEAVE_VOLTAGE = 2.0;
+
+  /** weaves per second */
+  private static final double WEAVE_FREQUENCY = 1.0;
+
+  private DriveSystem drive;
+
+  @BeforeEach
+  void start() {
+    drive = SimulatedRobot.get().getDriveSystem();
+    CommandScheduler.getInstance().cancelAll();
+  }
+
+  @AfterEach
+  void stop() {
+    CommandScheduler.getInstance().cancelAll();
+    drive.setHighRateOdometry(HIGH_RATE_ODOMETRY);
+    drive.setVoltage(0, 0);
+  }
+
+  @Test
+  void highRateOdometryTracksTheSimulation() {
+    double loopError = drive(false);
+    double highRateError = drive(true);
+
+    // integration error per update shrinks with the cube of the period, over a drive the square.
+    // 4x the rate should be well over 4x better
+    assertTrue(
+      highRateError < loopError / 4,
+      String.format(
+        "largest error %.2f mm every %.0f ms, %.2f mm once per loop",
+        highRateError * 1000, ODOMETRY_PERIOD * 1000, loopError * 1000
+      )
+    );
+  }
+
+  /**
+   * @param highRate sample odometry on the notifier
+   * @return largest distance between an odometry update and the sim pose it was read from - meters
+   */
+  private double drive(boolean highRate) {
+    drive.setHighRateOdometry(highRate);
+    drive.resetPose(new Pose2d(2.0, 4.0, new Rotation2d()));
+
+    double start = SimulatedRobot.now();
+    Command weave = Commands.run(() -> {
+      double offset = WEAVE_VOLTAGE * Math.sin(2 * Math.PI * WEAVE_FREQUENCY * (SimulatedRobot.now() - start));
+      drive.setVoltage(FORWARD_VOLTAGE - offset, FORWARD_VOLTAGE + offset);
+    }, drive);
+    weave.schedule();
+
+    int substeps = (int) Math.round(SimulatedRobot.LOOP_PERIOD / SIM_SUBSTEP);
+
+    OdometrySnapshot last = drive.getOdometrySnapshot();
+    double maxError = 0;
+
+    while (SimulatedRobot.now() - start < DRIVE_WINDOW) {
+      // once per loop odometry updates in periodic()
+      Pose2d truth = drive.getSimulatedPose();
+      CommandScheduler.getInstance().run();
+
+      OdometrySnapshot snapshot = drive.getOdometrySnapshot();
+      if (snapshot != last) {
+        last = snapshot;
+        maxError = Math.max(maxError, snapshot.pose.getTranslation().getDistance(truth.getTranslation()));
+      }
+
+      for (int i = 0; i < substeps; i++) {
+        // the notifier fires inside stepTiming and reads the sim as the last update left it
+        truth = drive.getSimulatedPose();
+        SimHooks.stepTiming(SIM_SUBSTEP);
+
+        snapshot = drive.getOdometrySnapshot();
+        if (snapshot != last) {
+          last = snapshot;
+          maxError = Math.max(maxError, snapshot.pose.getTranslation().getDistance(truth.getTranslation()));
+        }
+
+        drive.updateSimulation();
+      }
+    }
+
+    weave.cancel();
+    return maxError;
+  }
+}
@@ -0,0 +1,141 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.stream.Stream;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.simulation.SingleJointedArmSim;
+
+import static frc.robot.Constants.LiftConstants.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Moves a model of the arm between presets with the profiled controller and with the old bang-bang
+ * control, and checks the profile settles on the goal sooner, without reversing and stays there.
+ *
+ * <p>This runs the control math against its own arm model, so the two are compared on the same
+ * physics without REVLib's simulation of the spark closed loops in the way. The spark velocity loop
+ * bang-bang uses is modelled by its feedforward alone, P and D are too small to matter.
+ */
+class ArmControllerTest {
+  /** seconds, same as TimedRobot */
+  private static final double LOOP_PERIOD = 0.02;
+
+  /** seconds each move is watched for, long enough to see it hunt or settle */
+  private static final double LIFT_WINDOW = 4.0;
+
+  /** radians per second, slower than this isn't counted as moving when looking for reversals */
+  private static final double STOPPED_VELOCITY = 0.05;
+
+  /** how one move went */
+  private static class Move {
+    double finished = Double.NaN;
+    double settled = 0;
+    double overshoot = 0;
+    double error = 0;
+    int reversals = 0;
+
+    @Override
+    public String toString() {
+      return String.format(
+        "finished %.2f s, settled %.2f s, overshoot %.3f, reversals %d, final error %.3f",
+        finished, settled, overshoot, reversals, error
+      );
+    }
+  }
+
+  /** preset name, absolute encoder position the move starts from and goes to */
+  static Stream<Arguments> moves() {
+    return Stream.of(
+      Arguments.of("top", LOW_POSITION, TOP_POSITION),
+      Arguments.of("mid", LOW_POSITION, MID_POSITION),
+      Arguments.of("low", TOP_POSITION, LOW_POSITION)
+    );
+  }
+
+  @ParameterizedTest
+  @MethodSource("moves")
+  void profileSettlesWithoutHunting(String preset, double startPosition, double goal) {
+    Move profiled = run(startPosition, goal, true);
+    Move bangBang = run(startPosition, goal, false);
+
+    String measured = "lift to " + preset + ", profiled: " + profiled + "; bang-bang: " + bangBang;
+
+    assertFalse(Double.isNaN(profiled.finished), measured);
+    assertTrue(profiled.settled < bangBang.settled, measured);
+    assertTrue(profiled.settled <= profiled.finished, measured);
+    assertTrue(Math.abs(profiled.error) < TOLERANCE, measured);
+    assertTrue(profiled.overshoot < TOLERANCE, measured);
+    assertEquals(0, profiled.reversals, measured);
+  }
+
+  /**
+   * @param profiled the profiled controller, otherwise bang-bang
+   */
+  private static Move run(double startPosition, double goal, boolean profiled) {
+    SingleJointedArmSim arm = new SingleJointedArmSim(
+      DCMotor.getNEO(2),
+      ARM_GEARING,
+      SingleJointedArmSim.estimateMOI(ARM_LENGTH, ARM_MASS),
+      ARM_LENGTH,
+      ArmController.toAngle(MIN_POSITION),
+      ArmController.toAngle(MAX_POSITION),
+      ARM_MASS,
+      true
+    );
+    arm.setState(VecBuilder.fill(ArmController.toAngle(startPosition), 0));
+
+    ArmController controller = new ArmController();
+    controller.reset(startPosition);
+
+    // positive error is short of the goal
+    double direction = Math.signum(startPosition - goal);
+
+    Move move = new Move();
+    double lastVelocity = 0;
+
+    for (double time = 0; time < LIFT_WINDOW; time += LOOP_PERIOD) {
+      double position = ArmController.toPosition(arm.getAngleRads());
+
+      boolean done = profiled ? controller.atGoal() : ArmController.withinTolerance(position, goal);
+      if (done && Double.isNaN(move.finished)) {
+        move.finished = time;
+      }
+
+      double volts = profiled
+        ? controller.calculate(position, goal)
+        : MathUtil.clamp(ArmController.bangBang(position, goal) * FF_VALUE, -1, 1) * 12;
+
+      arm.setInputVoltage(volts);
+      arm.update(LOOP_PERIOD);
+
+      double next = ArmController.toPosition(arm.getAngleRads());
+      move.error = direction * (next - goal);
+      move.overshoot = Math.max(move.overshoot, -move.error);
+      if (!ArmController.withinTolerance(next, goal)) {
+        move.settled = time + LOOP_PERIOD;
+      }
+
+      double velocity = arm.getVelocityRadPerSec();
+      if (Math.abs(velocity) > STOPPED_VELOCITY) {
+        if (lastVelocity != 0 && Math.signum(velocity) != Math.signum(lastVelocity)) {
+          move.reversals++;
+        }
+        lastVelocity = velocity;
+      }
+    }
+
+    return move;
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import edu.wpi.first.wpilibj.util.Color8Bit;
+import frc.robot.subsystems.AddressableLEDSubsystem;
+
+import static frc.robot.Constants.LEDConstants.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LEDPatternTest {
+  /** full strip frames rendered per case in the microbenchmark, after as many to warm up */
+  private static final int FRAMES = 20_000;
+
+  private static final Color8Bit YELLOW = AddressableLEDSubsystem.YELLOW;
+  private static final Color8Bit OFF = AddressableLEDSubsystem.OFF;
+
+  @Test
+  void chaseMovesOnePixelPerFrame() {
+    LEDPattern chase = LEDPattern.chase(YELLOW, OFF, 4, 10, 16);
+    AddressableLEDBuffer buffer = new AddressableLEDBuffer(16);
+
+    assertEquals(16, chase.getFrameCount());
+
+    // 10 pixels per second, wrapping around after 16
+    assertEquals(3, chase.frameAt(0.35));
+    assertEquals(1, chase.frameAt(1.75));
+
+    chase.copyFrame(14, buffer, 0);
+    for (int i = 0; i < 16; i++) {
+      // lit from 14 through 17, which wraps to 1
+      boolean lit = i >= 14 || i <= 1;
+      assertEquals(lit ? YELLOW : OFF, buffer.getLED8Bit(i), "pixel " + i);
+    }
+  }
+
+  @Test
+  void copiesIntoTheSegment() {
+    LEDPattern solid = LEDPattern.solid(YELLOW, 4);
+    AddressableLEDBuffer buffer = new AddressableLEDBuffer(8);
+
+    solid.copyFrame(0, buffer, 2);
+    for (int i = 0; i < 8; i++) {
+      boolean inside = i >= 2 && i < 6;
+      assertEquals(inside ? YELLOW : OFF, buffer.getLED8Bit(i), "pixel " + i);
+    }
+  }
+
+  @Test
+  void progressPicksFrameByValue() {
+    double[] value = { 0.5 };
+    LEDPattern bar = LEDPattern.progress(YELLOW, OFF, () -> value[0], 10);
+
+    assertEquals(5, bar.frameAt(0));
+
+    value[0] = 2;
+    assertEquals(10, bar.frameAt(0));
+  }
+
+  /** one frame of the whole strip, precomputed against converted from HSV per pixel, copying should be well ahead */
+  @Test
+  void copyIsCheaperThanConverting() {
+    LEDPattern chase = LEDPattern.chase(YELLOW, OFF, 16, 60, LENGTH);
+    AddressableLEDBuffer strip = new AddressableLEDBuffer(LENGTH);
+
+    double copy = 0;
+    double convert = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      long start = System.nanoTime();
+      for (int frame = 0; frame < FRAMES; frame++) {
+        chase.copyFrame(frame % chase.getFrameCount(), strip, 0);
+      }
+      copy = (System.nanoTime() - start) / 1000.0 / FRAMES;
+
+      start = System.nanoTime();
+      for (int frame = 0; frame < FRAMES; frame++) {
+        for (int i = 0; i < strip.getLength(); i++) {
+          boolean lit = (i - frame % LENGTH + LENGTH) % LENGTH < 16;
+          strip.setHSV(i, YELLOW_H, YELLOW_S, lit ? YELLOW_V : 0);
+        }
+      }
+      convert = (System.nanoTime() - start) / 1000.0 / FRAMES;
+    }
+
+    assertTrue(
+      copy < convert / 2,
+      String.format("one %d LED frame: %.2f us copying a precomputed frame, %.2f us converting from HSV", LENGTH, copy, convert)
+    );
+  }
+}
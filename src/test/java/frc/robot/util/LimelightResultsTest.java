@@ -0,0 +1,281 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.ThreadMXBean;
+
+import frc.robot.util.LimelightResults.Fiducial;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Parses limelight json dumps, including ones the robot shouldn't see, and checks parsing a frame
+ * doesn't allocate and is faster than Jackson's tree parser, what the limelight examples use.
+ */
+class LimelightResultsTest {
+  /** a frame with two tags, as sent by the limelight with everything we skip left in */
+  private static final String DUMP = "{\"Results\":{"
+    + "\"Classifier\":[],\"Detector\":[],"
+    + "\"Fiducial\":["
+    + "{\"fID\":7,\"fam\":\"16H5C\","
+    + "\"pts\":[[412.5,231.25],[468.0,229.75],[470.25,286.5],[414.0,288.0]],\"skew\":[],"
+    + "\"t6c_ts\":[-0.1253,0.0521,1.6542,-1.2,2.37,0.8],"
+    + "\"t6r_fs\":[1.8342,2.7451,0.0,0.0,0.0,-3.52],"
+    + "\"t6r_ts\":[0.4821,0.0,-1.6542,0.0,-2.37,0.0],"
+    + "\"t6t_cs\":[0.1253,-0.0521,1.6542,1.2,-2.37,-0.8],"
+    + "\"t6t_rs\":[1.6542,0.1253,-0.4821,0.0,0.0,2.37],"
+    + "\"ta\":0.0123,\"tx\":-10.234567,\"txp\":441.1875,\"ty\":4.56789,\"typ\":258.875},"
+    + "{\"fID\":8,\"fam\":\"16H5C\","
+    + "\"pts\":[[101.0,240.5],[130.75,240.0],[131.0,270.25],[101.5,271.0]],\"skew\":[],"
+    + "\"t6c_ts\":[0.9,0.05,3.1,-0.5,-15.2,0.1],"
+    + "\"t6r_fs\":[1.8401,2.7398,0.0,0.0,0.0,-3.31],"
+    + "\"t6r_ts\":[-0.7,0.0,-3.0,0.0,15.2,0.0],"
+    + "\"t6t_cs\":[-0.9,-0.05,3.1,0.5,15.2,-0.1],"
+    + "\"t6t_rs\":[3.1,-0.9,-0.45,0.0,0.0,-15.2],"
+    + "\"ta\":0.0045,\"tx\":-28.5,\"txp\":116.0625,\"ty\":-3.25,\"typ\":255.4375}"
+    + "],"
+    + "\"Retro\":[],"
+    + "\"botpose\":[-6.4348,-1.2613,0.0,0.0,0.0,-3.41],"
+    + "\"botpose_wpiblue\":[1.8355,2.7432,0.0,0.0,0.0,-3.41],"
+    + "\"botpose_wpired\":[14.7051,5.2628,0.0,0.0,0.0,176.59],"
+    + "\"cl\":17.1,\"pID\":1.0,\"tl\":23.4,\"ts\":123456.789,\"v\":1"
+    + "}}";
+
+  /** frames each parser is timed over */
+  private static final int FRAMES = 50_000;
+
+  /** frames parsed first so the parsers are compiled */
+  private static final int WARMUP_FRAMES = 20_000;
+
+  private final LimelightResults results = new LimelightResults();
+
+  @Test
+  void parsesLimelightDump() {
+    assertTrue(results.parse(DUMP));
+
+    assertTrue(results.hasTargets);
+    assertEquals(123456.789, results.timestamp, 1e-9);
+    assertEquals(23.4, results.pipelineLatency, 1e-12);
+    assertEquals(17.1, results.captureLatency, 1e-12);
+    assertEquals(1, results.pipeline);
+
+    assertTrue(results.hasBotPose);
+    assertArrayEquals(new double[] { 1.8355, 2.7432, 0, 0, 0, -3.41 }, results.botPose, 1e-12);
+
+    assertEquals(2, results.getFiducialCount());
+    assertEquals(2, results.getReportedFiducialCount());
+
+    Fiducial first = results.fiducials[0];
+    assertEquals(7, first.id);
+    assertEquals(-10.234567, first.horizontalOffset, 1e-12);
+    assertEquals(4.56789, first.verticalOffset, 1e-12);
+    assertEquals(0.0123, first.area, 1e-12);
+    assertArrayEquals(new double[] { 1.8342, 2.7451, 0, 0, 0, -3.52 }, first.robotPoseField, 1e-12);
+    assertArrayEquals(new double[] { 1.6542, 0.1253, -0.4821, 0, 0, 2.37 }, first.targetPoseRobot, 1e-12);
+    assertEquals(4, first.cornerCount);
+    assertArrayEquals(
+      new double[] { 412.5, 231.25, 468.0, 229.75, 470.25, 286.5, 414.0, 288.0 },
+      first.corners,
+      1e-12
+    );
+
+    Fiducial second = results.fiducials[1];
+    assertEquals(8, second.id);
+    assertEquals(-28.5, second.horizontalOffset, 1e-12);
+    assertEquals(-3.25, second.verticalOffset, 1e-12);
+    assertArrayEquals(new double[] { 3.1, -0.9, -0.45, 0, 0, -15.2 }, second.targetPoseRobot, 1e-12);
+
+    // the larger tag is the target
+    assertEquals(-10.234567, results.targetHorizontalOffset, 1e-12);
+    assertEquals(4.56789, results.targetVerticalOffset, 1e-12);
+    assertEquals(0.0123, results.targetArea, 1e-12);
+  }
+
+  @Test
+  void largestRetroTargetIsTheTarget() {
+    assertTrue(results.parse(
+      "{\"Results\":{\"Fiducial\":[],\"Retro\":["
+      + "{\"pts\":[],\"ta\":0.4,\"tx\":12.5,\"txp\":500.0,\"ty\":-2.0,\"typ\":250.0},"
+      + "{\"pts\":[],\"ta\":1.2,\"tx\":-3.5,\"txp\":300.0,\"ty\":6.25,\"typ\":200.0}"
+      + "],\"pID\":0.0,\"v\":1}}"
+    ));
+
+    assertTrue(results.hasTargets);
+    assertEquals(0, results.getFiducialCount());
+    assertEquals(-3.5, results.targetHorizontalOffset, 1e-12);
+    assertEquals(6.25, results.targetVerticalOffset, 1e-12);
+    assertEquals(1.2, results.targetArea, 1e-12);
+  }
+
+  @Test
+  void emptyFiducialArrayClearsTags() {
+    // a frame with tags first, so anything left over would show
+    assertTrue(results.parse(DUMP));
+
+    assertTrue(results.parse("{\"Results\":{\"Fiducial\":[],\"botpose_wpiblue\":[],\"pID\":1.0,\"ts\":200.5,\"v\":0}}"));
+
+    assertFalse(results.hasTargets);
+    assertFalse(results.hasBotPose);
+    assertEquals(200.5, results.timestamp, 1e-12);
+    assertEquals(0, results.getFiducialCount());
+    assertEquals(0, results.getReportedFiducialCount());
+    assertTrue(Double.isNaN(results.targetHorizontalOffset));
+  }
+
+  @Test
+  void extraFiducialsAreCountedNotStored() {
+    int tags = LimelightResults.MAX_FIDUCIALS + 4;
+
+    StringBuilder json = new StringBuilder("{\"Results\":{\"Fiducial\":[");
+    for (int i = 0; i < tags; i++) {
+      json.append(i > 0 ? "," : "")
+        .append("{\"fID\":").append(i)
+        .append(",\"pts\":[[1,2],[3,4],[5,6],[7,8],[9,10]]")
+        .append(",\"tx\":").append(i * 0.5)
+        .append("}");
+    }
+    // after the tags, so a bad skip would lose it
+    json.append("],\"ts\":42.0,\"v\":1}}");
+
+    assertTrue(results.parse(json));
+
+    assertEquals(LimelightResults.MAX_FIDUCIALS, results.getFiducialCount());
+    assertEquals(tags, results.getReportedFiducialCount());
+    assertEquals(42.0, results.timestamp, 1e-12);
+
+    for (int i = 0; i < LimelightResults.MAX_FIDUCIALS; i++) {
+      assertEquals(i, results.fiducials[i].id);
+      assertEquals(i * 0.5, results.fiducials[i].horizontalOffset, 1e-12);
+
+      // the fifth corner doesn't fit
+      assertEquals(LimelightResults.MAX_CORNERS, results.fiducials[i].cornerCount);
+      assertEquals(8, results.fiducials[i].corners[7], 1e-12);
+    }
+  }
+
+  @Test
+  void parsesExponentsAndNegatives() {
+    assertTrue(results.parse(
+      "{\"Results\":{\"Fiducial\":[{\"fID\":3,\"tx\":-1.5e-3,\"ty\":2E+2,\"ta\":6.25e-1}],"
+      + "\"botpose_wpiblue\":[-0.0,-12,1e0,-7.5E1,3.0e-10,-123456789.125],"
+      + "\"tl\":1.23456789012345678901e1,\"v\":1}}"
+    ));
+
+    Fiducial fiducial = results.fiducials[0];
+    assertEquals(-1.5e-3, fiducial.horizontalOffset, 1e-15);
+    assertEquals(200, fiducial.verticalOffset, 1e-12);
+    assertEquals(0.625, fiducial.area, 1e-15);
+
+    assertTrue(results.hasBotPose);
+    assertArrayEquals(new double[] { -0.0, -12, 1, -75, 3e-10, -123456789.125 }, results.botPose, 1e-12);
+
+    // more digits than the mantissa keeps
+    assertEquals(12.3456789012345678901, results.pipelineLatency, 1e-12);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "",
+    "[]",
+    "{\"v\" 1}",
+    "{\"v\":1,}",
+    "{\"v\":-}",
+    "{\"v\":.}",
+    "{\"Results\":{\"Fiducial\":[{\"fID\":}]}}",
+    "{\"Results\":{\"Fiducial\":[{\"fID\":1,\"pts\":[[1]]}]}}",
+    "{\"Results\":{\"Fiducial\":{\"fID\":1}}}",
+    "{\"Results\":{\"botpose_wpiblue\":[1,2;3]}}",
+  })
+  void malformedInputFails(String json) {
+    assertFalse(results.parse(json));
+  }
+
+  @Test
+  void truncatedInputFails() {
+    for (int length = 0; length < DUMP.length(); length++) {
+      assertFalse(results.parse(DUMP.substring(0, length)), "parsed the first " + length + " characters");
+    }
+
+    // still usable afterwards
+    assertTrue(results.parse(DUMP));
+    assertEquals(2, results.getFiducialCount());
+  }
+
+  @Test
+  void parsingDoesNotAllocate() throws Exception {
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported(), "this jvm doesn't count allocations");
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    ObjectMapper mapper = new ObjectMapper();
+    long thread = Thread.currentThread().getId();
+
+    // sum of what was read, so nothing can be optimized out
+    double check = 0;
+
+    for (int i = 0; i < WARMUP_FRAMES; i++) {
+      results.parse(DUMP);
+      check += results.fiducials[0].horizontalOffset;
+      check += readWithJackson(mapper, DUMP);
+    }
+
+    long allocated = threads.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    for (int i = 0; i < FRAMES; i++) {
+      results.parse(DUMP);
+      check += results.fiducials[0].horizontalOffset;
+    }
+    double parseTime = (System.nanoTime() - start) / 1000.0 / FRAMES;
+    double parseBytes = (double) (threads.getThreadAllocatedBytes(thread) - allocated) / FRAMES;
+
+    allocated = threads.getThreadAllocatedBytes(thread);
+    start = System.nanoTime();
+    for (int i = 0; i < FRAMES; i++) {
+      check += readWithJackson(mapper, DUMP);
+    }
+    double jacksonTime = (System.nanoTime() - start) / 1000.0 / FRAMES;
+    double jacksonBytes = (double) (threads.getThreadAllocatedBytes(thread) - allocated) / FRAMES;
+
+    // the check sum goes in the message so the reads are used
+    String measured = String.format(
+      "per frame: %.2f us and %.2f bytes parsing in place, %.2f us and %.0f bytes with Jackson (check %.1f)",
+      parseTime, parseBytes, jacksonTime, jacksonBytes, check
+    );
+
+    // reading the allocation counter can allocate a little itself, well under a byte a frame
+    assertTrue(parseBytes < 1, measured);
+    assertTrue(parseTime < jacksonTime, measured);
+  }
+
+  /**
+   * the same fields the robot uses, read from a Jackson tree
+   * @return sum of the horizontal offsets, so the reads aren't optimized out
+   */
+  private static double readWithJackson(ObjectMapper mapper, String json) throws Exception {
+    JsonNode frame = mapper.readTree(json).get("Results");
+
+    double sum = frame.get("ts").asDouble() + frame.get("botpose_wpiblue").get(0).asDouble();
+    for (JsonNode fiducial : frame.get("Fiducial")) {
+      sum += fiducial.get("fID").asInt() + fiducial.get("tx").asDouble() + fiducial.get("t6t_rs").get(0).asDouble();
+      for (JsonNode corner : fiducial.get("pts")) {
+        sum += corner.get(0).asDouble();
+      }
+    }
+
+    return sum;
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.EnumMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.sim.SimulatedRobot;
+import frc.robot.util.RobotHealth.Issue;
+
+import static frc.robot.Constants.HealthConstants.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Puts the simulated robot in each unhealthy state and checks what the overlay shows. The HAL
+ * simulation never reports a brownout, so that one isn't covered.
+ */
+class RobotHealthTest {
+  /** volts, a healthy battery */
+  private static final double NOMINAL_VOLTAGE = 12.5;
+
+  /** seconds for the overlay to clear after a problem, longer than the brownout hold */
+  private static final double RECOVERY = BROWNOUT_HOLD_TIME + 1.0;
+
+  private final EnumMap<Issue, LEDPattern> patterns = new EnumMap<>(Issue.class);
+
+  private RobotHealth health;
+
+  @BeforeEach
+  void start() {
+    health = SimulatedRobot.get().getHealth();
+
+    for (Issue issue : Issue.values()) {
+      patterns.put(issue, health.getPattern(issue));
+    }
+
+    // simulated devices don't all report a connection, which would cover every other issue
+    health.setPattern(Issue.DISCONNECTED, null);
+
+    CommandScheduler.getInstance().cancelAll();
+    RoboRioSim.setVInVoltage(NOMINAL_VOLTAGE);
+    SimulatedRobot.idle(RECOVERY);
+  }
+
+  @AfterEach
+  void restore() {
+    RoboRioSim.setVInVoltage(NOMINAL_VOLTAGE);
+    patterns.forEach(health::setPattern);
+    SimulatedRobot.idle(RECOVERY);
+  }
+
+  @Test
+  void nominalShowsNothing() {
+    assertNull(health.getIssue());
+  }
+
+  @Test
+  void lowBatteryIsDebounced() {
+    RoboRioSim.setVInVoltage(LOW_BATTERY_VOLTAGE - 0.5);
+    SimulatedRobot.idle(LOW_BATTERY_TIME / 2);
+    assertNull(health.getIssue(), "a short dip is shown");
+
+    SimulatedRobot.idle(LOW_BATTERY_TIME);
+    assertEquals(Issue.LOW_BATTERY, health.getIssue());
+
+    RoboRioSim.setVInVoltage(NOMINAL_VOLTAGE);
+    SimulatedRobot.idle(RECOVERY);
+    assertNull(health.getIssue(), "still shown after the battery recovered");
+  }
+
+  @Test
+  void slowLoopsShowOverruns() {
+    // loops that run past 20 ms, timed by the profiler like the real robot loop
+    LoopProfiler profiler = LoopProfiler.getInstance();
+    double start = SimulatedRobot.now();
+    while (SimulatedRobot.now() - start < 2.0) {
+      profiler.beginLoop();
+      long end = System.nanoTime() + 25_000_000L;
+      while (System.nanoTime() < end) {
+        Thread.onSpinWait();
+      }
+      profiler.endLoop();
+
+      SimHooks.stepTiming(SimulatedRobot.LOOP_PERIOD);
+    }
+    assertEquals(Issue.LOOP_OVERRUN, health.getIssue());
+
+    SimulatedRobot.idle(RECOVERY);
+    assertNull(health.getIssue(), "still shown after the loops sped up");
+  }
+
+  @Test
+  void hiddenIssuesAreSkipped() {
+    health.setPattern(Issue.LOW_BATTERY, null);
+
+    RoboRioSim.setVInVoltage(LOW_BATTERY_VOLTAGE - 0.5);
+    SimulatedRobot.idle(LOW_BATTERY_TIME * 2);
+    assertNull(health.getIssue());
+  }
+}